@@ -0,0 +1,69 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package apgas.examples;
+
+import static apgas.Constructs.*;
+
+import apgas.Configuration;
+import apgas.Place;
+import apgas.util.ArrayCopy;
+import apgas.util.GlobalRef;
+
+/**
+ * Compares {@link ArrayCopy#asyncCopy} with an {@code asyncAt} capturing the
+ * source array for double arrays of increasing sizes.
+ * <p>
+ * Copies from the first place to the second place. The transport may be
+ * selected as usual, e.g.:
+ *
+ * <pre>
+ * java -Dapgas.transport=apgas.impl.NioTransport apgas.examples.ArrayCopyBenchmark 20
+ * </pre>
+ */
+final class ArrayCopyBenchmark {
+  public static void main(String[] args) {
+    final int repeat = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+    if (System.getProperty(Configuration.APGAS_PLACES) == null) {
+      System.setProperty(Configuration.APGAS_PLACES, "2");
+    }
+    final Place next = place(1);
+
+    for (int n = 1 << 10; n <= 1 << 22; n <<= 3) {
+      final double[] src = new double[n];
+      for (int i = 0; i < n; i++) {
+        src[i] = i;
+      }
+      final int size = n;
+      final GlobalRef<double[]> dst = at(next,
+          () -> new GlobalRef<>(new double[size]));
+
+      for (int round = 0; round < 3; round++) {
+        long time = System.nanoTime();
+        for (int i = 0; i < repeat; i++) {
+          finish(() -> ArrayCopy.asyncCopy(src, 0, dst, next, 0, size));
+        }
+        final double copy = (System.nanoTime() - time) / 1e6 / repeat;
+
+        time = System.nanoTime();
+        for (int i = 0; i < repeat; i++) {
+          finish(() -> asyncAt(next,
+              () -> System.arraycopy(src, 0, dst.get(), 0, size)));
+        }
+        final double capture = (System.nanoTime() - time) / 1e6 / repeat;
+
+        System.out.println("double[" + n + "]: asyncCopy " + copy
+            + " ms, capturing asyncAt " + capture + " ms");
+      }
+      at(next, () -> dst.free());
+    }
+  }
+}
@@ -15,6 +15,7 @@ import static apgas.Constructs.*;
 
 import apgas.Configuration;
 import apgas.Place;
+import apgas.impl.Config;
 
 public class BenchMicro {
   static int OUTER_ITERS = 100;
@@ -39,6 +40,14 @@ public class BenchMicro {
     final boolean resilient = Boolean.getBoolean(Configuration.APGAS_RESILIENT);
     System.out
         .println("Configuration: " + (resilient ? "" : "not ") + "resilient");
+    if (System.getProperty(Config.APGAS_TRANSPORT) == null) {
+      final boolean direct = Boolean.getBoolean(Config.APGAS_TRANSPORT_DIRECT);
+      System.out.println("Delivery: "
+          + (direct ? "direct to pool" : "through executor service"));
+    }
+    System.out.println("Scheduler: "
+        + (Boolean.getBoolean(Config.APGAS_VIRTUAL_THREADS) ? "virtual threads"
+            : "fork join pool"));
 
     System.out.println("Running with " + places().size() + " places.");
     System.out.println(
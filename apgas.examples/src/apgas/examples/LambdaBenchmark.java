@@ -0,0 +1,64 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package apgas.examples;
+
+import static apgas.Constructs.*;
+
+import apgas.Configuration;
+import apgas.Place;
+import apgas.impl.Config;
+
+/**
+ * Measures the cost of sending lambdas between places.
+ * <p>
+ * Defaults to two places in one JVM with {@code apgas.impl.LocalTransport} so
+ * that each round trip only serializes and deserializes the task and the
+ * termination message, e.g.:
+ *
+ * <pre>
+ * java -Dapgas.serialization=java apgas.examples.LambdaBenchmark
+ * </pre>
+ */
+final class LambdaBenchmark {
+  static int ITERS = 100000;
+
+  static volatile long sink;
+
+  public static void main(String[] args) {
+    if (System.getProperty(Configuration.APGAS_PLACES) == null) {
+      System.setProperty(Configuration.APGAS_PLACES, "2");
+    }
+    if (System.getProperty(Config.APGAS_TRANSPORT) == null) {
+      System.setProperty(Config.APGAS_TRANSPORT, "apgas.impl.LocalTransport");
+    }
+    final Place next = place(1);
+    final long a = 1;
+    final int b = 2;
+    final String c = "3";
+
+    for (int round = 0; round < 3; round++) {
+      long time = System.nanoTime();
+      for (int i = 0; i < ITERS; i++) {
+        finish(() -> asyncAt(next, () -> sink++));
+      }
+      System.out.println("no captured argument: "
+          + (System.nanoTime() - time) / 1e3 / ITERS + " microseconds");
+
+      time = System.nanoTime();
+      for (int i = 0; i < ITERS; i++) {
+        finish(() -> asyncAt(next, () -> sink += a + b + c.length()));
+      }
+      System.out.println("three captured arguments: "
+          + (System.nanoTime() - time) / 1e3 / ITERS + " microseconds");
+    }
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package apgas.examples;
+
+import static apgas.Constructs.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import apgas.Configuration;
+import apgas.Place;
+import apgas.impl.Config;
+
+/**
+ * Measures blocking nested finishes and the number of platform threads they
+ * use and start.
+ * <p>
+ * Runs chains of nested {@code at} bouncing between places, which block one
+ * task per hop, concurrent {@code at} to the next place, which block until
+ * the tasks in the queue of the blocked worker run, and a recursive Fibonacci
+ * computation with one finish per call. Defaults to two places in one JVM with
+ * {@code apgas.impl.LocalTransport} so that the peak thread count covers all
+ * the places. Compare the default scheduler with virtual threads or with
+ * blocked workers helping with the tasks of any finish, e.g.:
+ *
+ * <pre>
+ * java -Dapgas.virtual.threads=true apgas.examples.NestedFinishBenchmark 200 28
+ * java -Dapgas.finish.help.depth=32 apgas.examples.NestedFinishBenchmark 200 28
+ * </pre>
+ */
+final class NestedFinishBenchmark {
+  static int chain(int depth) {
+    if (depth == 0) {
+      return 0;
+    }
+    final Place next = place((here().id + 1) % places().size());
+    return at(next, () -> chain(depth - 1)) + 1;
+  }
+
+  static void fanOut(int width) {
+    final Place next = place((here().id + 1) % places().size());
+    finish(() -> {
+      for (int i = 0; i < width; i++) {
+        async(() -> at(next, () -> {
+        }));
+      }
+    });
+  }
+
+  static int fib(int n) {
+    if (n < 2) {
+      return n;
+    }
+    final int result[] = new int[2];
+    finish(() -> {
+      async(() -> result[0] = fib(n - 2));
+      result[1] = fib(n - 1);
+    });
+    return result[0] + result[1];
+  }
+
+  public static void main(String[] args) {
+    final int depth = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+    final int n = args.length > 1 ? Integer.parseInt(args[1]) : 25;
+    if (System.getProperty(Configuration.APGAS_PLACES) == null) {
+      System.setProperty(Configuration.APGAS_PLACES, "2");
+    }
+    if (System.getProperty(Config.APGAS_TRANSPORT) == null) {
+      System.setProperty(Config.APGAS_TRANSPORT, "apgas.impl.LocalTransport");
+    }
+    System.out.println("Scheduler: "
+        + (Boolean.getBoolean(Config.APGAS_VIRTUAL_THREADS) ? "virtual threads"
+            : "fork join pool"));
+    final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    for (int round = 0; round < 5; round++) {
+      threads.resetPeakThreadCount();
+      long started = threads.getTotalStartedThreadCount();
+      long time = System.nanoTime();
+      chain(depth);
+      time = System.nanoTime() - time;
+      System.out.println("at chain of depth " + depth + ": " + time / 1e6
+          + " ms, peak threads: " + threads.getPeakThreadCount()
+          + ", started threads: "
+          + (threads.getTotalStartedThreadCount() - started));
+
+      threads.resetPeakThreadCount();
+      started = threads.getTotalStartedThreadCount();
+      time = System.nanoTime();
+      fanOut(depth);
+      time = System.nanoTime() - time;
+      System.out.println(depth + " concurrent at: " + time / 1e6
+          + " ms, peak threads: " + threads.getPeakThreadCount()
+          + ", started threads: "
+          + (threads.getTotalStartedThreadCount() - started));
+
+      threads.resetPeakThreadCount();
+      started = threads.getTotalStartedThreadCount();
+      time = System.nanoTime();
+      fib(n);
+      time = System.nanoTime() - time;
+      System.out.println("fib(" + n + ") with nested finishes: " + time / 1e6
+          + " ms, peak threads: " + threads.getPeakThreadCount()
+          + ", started threads: "
+          + (threads.getTotalStartedThreadCount() - started));
+    }
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package apgas.examples;
+
+import static apgas.Constructs.*;
+
+import apgas.Configuration;
+import apgas.GlobalRuntime;
+import apgas.Place;
+import apgas.impl.GlobalRuntimeImpl;
+import apgas.impl.NioTransport;
+
+/**
+ * Measures the startup time of the global runtime and the cost of the first
+ * messages between places, e.g., for 64, 128, and 256 places on one host:
+ *
+ * <pre>
+ * java -Dapgas.places=64 -Dapgas.transport=apgas.impl.NioTransport \
+ *     -Dapgas.transport.links.max=16 apgas.examples.StartupBenchmark
+ * </pre>
+ *
+ * The ring exchange only requires one link per place. The all-to-all exchange
+ * requires a link between every pair of places unless the number of links is
+ * capped by {@code apgas.transport.links.max}. With
+ * {@code apgas.impl.NioTransport}, the number of open links is reported after
+ * each phase.
+ * <p>
+ * The startup time is dominated by the formation of the Hazelcast cluster,
+ * whose members connect to one another whatever the transport. Capping the
+ * links of {@code apgas.impl.NioTransport} does not reduce this cost. It only
+ * bounds the sockets and buffers opened by the exchanges that follow.
+ */
+final class StartupBenchmark {
+  public static void main(String[] args) {
+    if (System.getProperty(Configuration.APGAS_PLACES) == null) {
+      System.setProperty(Configuration.APGAS_PLACES, "64");
+    }
+
+    long time = System.nanoTime();
+    GlobalRuntime.getRuntime();
+    final int n = places().size();
+    System.out.println("Startup of " + n + " places: "
+        + (System.nanoTime() - time) / 1e9 + " seconds, " + links()
+        + " open links");
+
+    time = System.nanoTime();
+    finish(() -> {
+      for (final Place p : places()) {
+        asyncAt(p, () -> asyncAt(place((here().id + 1) % n), () -> {
+        }));
+      }
+    });
+    System.out.println("First ring exchange: "
+        + (System.nanoTime() - time) / 1e9 + " seconds, " + links()
+        + " open links");
+
+    time = System.nanoTime();
+    finish(() -> {
+      for (final Place p : places()) {
+        asyncAt(p, () -> {
+          for (final Place q : places()) {
+            asyncAt(q, () -> {
+            });
+          }
+        });
+      }
+    });
+    System.out.println("First all-to-all exchange: "
+        + (System.nanoTime() - time) / 1e9 + " seconds, " + links()
+        + " open links");
+
+    time = System.nanoTime();
+    finish(() -> {
+      for (final Place p : places()) {
+        asyncAt(p, () -> {
+          for (final Place q : places()) {
+            asyncAt(q, () -> {
+            });
+          }
+        });
+      }
+    });
+    System.out.println("Second all-to-all exchange: "
+        + (System.nanoTime() - time) / 1e9 + " seconds, " + links()
+        + " open links");
+  }
+
+  /**
+   * Returns the total number of open links across places or -1 if not using
+   * {@link NioTransport}.
+   */
+  private static int links() {
+    int count = 0;
+    for (final Place p : places()) {
+      final int l = at(p, () -> {
+        final Object transport = ((GlobalRuntimeImpl) GlobalRuntime
+            .getRuntime()).getTransport();
+        return transport instanceof NioTransport
+            ? ((NioTransport) transport).getOpenLinks() : -1;
+      });
+      if (l < 0) {
+        return -1;
+      }
+      count += l;
+    }
+    return count;
+  }
+}
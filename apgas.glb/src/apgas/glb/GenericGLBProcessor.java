@@ -11,6 +11,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
 
 import apgas.Place;
 import apgas.util.PlaceLocalObject;
@@ -117,6 +118,12 @@ final class GenericGLBProcessor extends PlaceLocalObject
    */
   private int state = -2;
 
+  /**
+   * The thread parked in {@link #steal()} until the answer of the victim
+   * arrives, if any. Protected by the lock of this instance.
+   */
+  private Thread waiter;
+
   /**
    * List of thieves that asked for work while the current place was performing
    * computation. They will be answered in {@link #distribute()} method.
@@ -192,7 +199,11 @@ final class GenericGLBProcessor extends PlaceLocalObject
      * be waken up
      */
     state = -1; // Switch back to 'running' state.
-    notifyAll(); // Wakes up the halted thread in 'steal' procedure.
+    if (waiter != null) {
+      // Wakes up the halted thread in 'steal' procedure.
+      LockSupport.unpark(waiter);
+      waiter = null;
+    }
   }
 
   /**
@@ -216,9 +227,15 @@ final class GenericGLBProcessor extends PlaceLocalObject
       if (toGive != null) {
         log.stealsSuffered++;
       }
-      uncountedAsyncAt(p, () -> {
-        deal(toGive);
-      });
+      if (toGive == null) {
+        controlAsyncAt(p, () -> {
+          deal(null);
+        });
+      } else {
+        uncountedAsyncAt(p, () -> {
+          deal(toGive);
+        });
+      }
     }
 
     final int h = home.id;
@@ -375,7 +392,7 @@ final class GenericGLBProcessor extends PlaceLocalObject
       }
     }
 
-    uncountedAsyncAt(p, () -> {
+    controlAsyncAt(p, () -> {
       deal(null);
     });
   }
@@ -433,7 +450,7 @@ final class GenericGLBProcessor extends PlaceLocalObject
      */
     Place p;
     while ((p = thieves.poll()) != null) {
-      uncountedAsyncAt(p, () -> {
+      controlAsyncAt(p, () -> {
         deal(null);
       });
     }
@@ -469,6 +486,7 @@ final class GenericGLBProcessor extends PlaceLocalObject
      */
     synchronized (this) {
       state = p;
+      waiter = Thread.currentThread();
     }
 
     log.stopLive();
@@ -478,17 +496,26 @@ final class GenericGLBProcessor extends PlaceLocalObject
      * 'uncounted' as this asynchronous call is about program "logistics" and
      * does not need to intervene in the enclosing "finish" construct
      */
-    uncountedAsyncAt(place(p), () -> {
+    controlAsyncAt(place(p), () -> {
       request(h);
     });
 
-    synchronized (this) {
-      while (state >= 0) {
-        try {
-          wait();
-        } catch (final InterruptedException e) {
+    // unlike waiting on the monitor, parking unmounts a virtual thread; a
+    // pending interrupt would make park return at once, so it is restored later
+    boolean interrupted = false;
+    while (true) {
+      synchronized (this) {
+        if (state < 0) {
+          break;
         }
       }
+      if (Thread.interrupted()) {
+        interrupted = true;
+      }
+      LockSupport.park(this);
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
     }
     log.startLive();
   }
@@ -515,11 +542,7 @@ final class GenericGLBProcessor extends PlaceLocalObject
    * prepares it for a new computation.
    */
   private <R extends Fold<R> & Serializable> void reset(R init) {
-    finish(() -> {
-      for (final Place p : places()) {
-        asyncAt(p, () -> clear(init));
-      }
-    });
+    broadcast(places(), () -> clear(init));
   }
 
   /**
@@ -533,11 +556,7 @@ final class GenericGLBProcessor extends PlaceLocalObject
    */
   @SuppressWarnings("unchecked")
   private <R extends Fold<R> & Serializable> R result() {
-    finish(() -> {
-      for (final Place p : places()) {
-        asyncAt(p, () -> gather());
-      }
-    });
+    broadcast(places(), () -> gather());
     return (R) result;
 
   }
@@ -608,14 +627,9 @@ final class GenericGLBProcessor extends PlaceLocalObject
   public Logger[] getLogger() {
     logs = new Logger[places];
     logs[0] = log;
-    finish(() -> {
-      for (final Place p : places()) {
-        if (p.id != 0) {
-
-          asyncAt(p, () -> {
-            sendLogger();
-          });
-        }
+    broadcast(places(), () -> {
+      if (here().id != 0) {
+        sendLogger();
       }
     });
     return logs;
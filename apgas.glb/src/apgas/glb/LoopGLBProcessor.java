@@ -9,6 +9,7 @@ import java.io.Serializable;
 import java.util.Collection;
 import java.util.Random;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import apgas.Place;
@@ -101,6 +102,12 @@ final class LoopGLBProcessor extends PlaceLocalObject implements GLBProcessor {
    */
   private int state = -2;
 
+  /**
+   * The thread parked in {@link #steal()} until the answer of the victim
+   * arrives, if any. Protected by the lock of this instance.
+   */
+  private Thread waiter;
+
   /**
    * List of thieves that asked for work while the current place was performing
    * computation. Each will be answered in the {@link #distribute()} method.
@@ -160,7 +167,10 @@ final class LoopGLBProcessor extends PlaceLocalObject implements GLBProcessor {
     // Switch back to 'running' state.
     state = -1;
     // Wakes up the halted thread in 'steal' procedure.
-    notifyAll();
+    if (waiter != null) {
+      LockSupport.unpark(waiter);
+      waiter = null;
+    }
   }
 
   /**
@@ -184,9 +194,15 @@ final class LoopGLBProcessor extends PlaceLocalObject implements GLBProcessor {
       if (toGive != null) {
         log.stealsSuffered++;
       }
-      uncountedAsyncAt(p, () -> {
-        deal(toGive);
-      });
+      if (toGive == null) {
+        controlAsyncAt(p, () -> {
+          deal(null);
+        });
+      } else {
+        uncountedAsyncAt(p, () -> {
+          deal(toGive);
+        });
+      }
     }
     if (lifeline.get()) {
       @SuppressWarnings("unchecked")
@@ -304,7 +320,7 @@ final class LoopGLBProcessor extends PlaceLocalObject implements GLBProcessor {
         return;
       }
     }
-    uncountedAsyncAt(p, () -> {
+    controlAsyncAt(p, () -> {
       deal(null);
     });
   }
@@ -366,7 +382,7 @@ final class LoopGLBProcessor extends PlaceLocalObject implements GLBProcessor {
      */
     Place p;
     while ((p = thieves.poll()) != null) {
-      uncountedAsyncAt(p, () -> {
+      controlAsyncAt(p, () -> {
         deal(null);
       });
     }
@@ -403,27 +419,37 @@ final class LoopGLBProcessor extends PlaceLocalObject implements GLBProcessor {
     // Change state to 'p', i.e. thieving from p before requesting work from it.
     synchronized (this) {
       state = p;
+      waiter = Thread.currentThread();
     }
 
     log.stopLive();
     // Calls "request" at place p, passing itself as parameter
     // The call is 'uncounted' as this is about program "logistics" and
     // does not need to intervene in the enclosing "finish" for the computation.
-    uncountedAsyncAt(place(p), () -> {
+    controlAsyncAt(place(p), () -> {
       request(h);
     });
 
-    synchronized (this) { // synchronized block necessary for the wait() call.
-      /*
-       * Enclosing safety loop. State is set back to -1 ('running') in method
-       * deal when the answer is received, thus lifting the barrier.
-       */
-      while (state >= 0) {
-        try {
-          wait();
-        } catch (final InterruptedException e) {
+    /*
+     * Enclosing safety loop. State is set back to -1 ('running') in method deal
+     * when the answer is received, thus lifting the barrier. Unlike waiting on
+     * the monitor, parking unmounts a virtual thread. A pending interrupt would
+     * make park return at once, so it is cleared and restored afterwards.
+     */
+    boolean interrupted = false;
+    while (true) {
+      synchronized (this) {
+        if (state < 0) {
+          break;
         }
       }
+      if (Thread.interrupted()) {
+        interrupted = true;
+      }
+      LockSupport.park(this);
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
     }
     log.startLive();
 
@@ -513,11 +539,7 @@ final class LoopGLBProcessor extends PlaceLocalObject implements GLBProcessor {
    *          initial result instance to be put at each place.
    */
   private <R extends Fold<R> & Serializable> void reset(R init) {
-    finish(() -> {
-      for (final Place p : places()) {
-        asyncAt(p, () -> clear(init));
-      }
-    });
+    broadcast(places(), () -> clear(init));
   }
 
   /**
@@ -531,12 +553,8 @@ final class LoopGLBProcessor extends PlaceLocalObject implements GLBProcessor {
    */
   @SuppressWarnings("unchecked")
   private <R extends Fold<R> & Serializable> R result() {
-    finish(() -> {
-      for (final Place p : places()) {
-        // Folding this instance's folds into that of place 0
-        asyncAt(p, () -> gather());
-      }
-    });
+    // Folding the folds of every place into that of place 0
+    broadcast(places(), () -> gather());
     return (R) result;
   }
 
@@ -566,14 +584,9 @@ final class LoopGLBProcessor extends PlaceLocalObject implements GLBProcessor {
   public Logger[] getLogger() {
     logs = new Logger[places];
     logs[0] = log;
-    finish(() -> {
-      for (final Place p : places()) {
-        if (p.id != 0) {
-
-          asyncAt(p, () -> {
-            sendLogger();
-          });
-        }
+    broadcast(places(), () -> {
+      if (here().id != 0) {
+        sendLogger();
       }
     });
     return logs;
@@ -0,0 +1,368 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2015
+ */
+
+package apgas.sockets;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The {@link AdaptiveCompressor} class implements per-message compression with
+ * a codec chosen per destination.
+ * <p>
+ * Messages below a size threshold are never compressed. Larger messages are
+ * periodically compressed with every codec to sample the compression ratios
+ * achieved for their destination; the remaining messages use the codec with
+ * the best recent ratio, or none if compression does not pay off.
+ * <p>
+ * The first byte of each message is reserved for a tag. Compressed messages
+ * then hold the uncompressed length and the deflate stream.
+ */
+final class AdaptiveCompressor {
+  /**
+   * Tag of uncompressed messages.
+   */
+  static final byte RAW = 0;
+
+  /**
+   * Tag of deflated messages.
+   */
+  static final byte DEFLATED = 1;
+
+  /**
+   * The deflate levels of the available codecs: fast and compact.
+   */
+  private static final int[] LEVELS = { Deflater.BEST_SPEED,
+      Deflater.DEFAULT_COMPRESSION };
+
+  /**
+   * Every SAMPLE_PERIOD-th compressible message to a destination is compressed
+   * with every codec.
+   */
+  private static final int SAMPLE_PERIOD = 32;
+
+  /**
+   * Compression is skipped if it saves less than this fraction of the bytes.
+   */
+  private static final double MIN_GAIN = 0.1;
+
+  /**
+   * The compact codec is preferred only if it saves this much more than the
+   * fast codec.
+   */
+  private static final double MIN_EXTRA_GAIN = 0.05;
+
+  /**
+   * Compression buffers larger than this are not kept for reuse.
+   */
+  private static final int MAX_BUFFER_SIZE = 1 << 20;
+
+  /**
+   * The maximal compression ratio of the deflate format.
+   */
+  private static final int MAX_RATIO = 1032;
+
+  /**
+   * The per-thread deflaters indexed by codec.
+   */
+  private static final ThreadLocal<Deflater[]> deflaters = ThreadLocal
+      .withInitial(() -> {
+        final Deflater[] d = new Deflater[LEVELS.length];
+        for (int i = 0; i < d.length; i++) {
+          d[i] = new Deflater(LEVELS[i]);
+        }
+        return d;
+      });
+
+  /**
+   * The per-thread compression buffers indexed by codec.
+   */
+  private static final ThreadLocal<byte[][]> buffers = ThreadLocal
+      .withInitial(() -> new byte[LEVELS.length][]);
+
+  /**
+   * Messages smaller than this are not compressed.
+   */
+  private final int threshold;
+
+  /**
+   * The statistics indexed by destination place ID.
+   */
+  private final Map<Integer, Stats> stats = new ConcurrentHashMap<>();
+
+  /**
+   * The inflater of the receive loop.
+   */
+  private final Inflater inflater = new Inflater();
+
+  /**
+   * The decompression buffer of the receive loop.
+   */
+  private byte[] inflated = new byte[0];
+
+  /**
+   * Constructs a compressor.
+   *
+   * @param threshold
+   *          messages smaller than this are not compressed
+   */
+  AdaptiveCompressor(int threshold) {
+    this.threshold = threshold;
+  }
+
+  /**
+   * Compresses a message if worthwhile.
+   *
+   * @param place
+   *          the destination place ID
+   * @param data
+   *          the message starting at index 1, index 0 is reserved for the tag
+   * @param length
+   *          the length of the message including the tag
+   * @param copy
+   *          true if the result must not share {@code data}, which must
+   *          otherwise be exactly {@code length} bytes long
+   * @return the tagged message
+   */
+  byte[] compress(int place, byte[] data, int length, boolean copy) {
+    final Stats s = stats.computeIfAbsent(place, p -> new Stats());
+    s.raw.add(length);
+    data[0] = RAW;
+    byte[] compressed = null;
+    int size = length;
+    if (length >= threshold) {
+      if (s.count.getAndIncrement() % SAMPLE_PERIOD == 0) {
+        for (int i = 0; i < LEVELS.length; i++) {
+          final byte[] buffer = buffer(i, length);
+          final int n = deflate(i, data, length, buffer);
+          final double ratio = n < 0 ? 1.0 : (double) n / length;
+          s.sample(i, ratio);
+          if (n >= 0 && n < size) {
+            compressed = buffer;
+            size = n;
+          }
+        }
+      } else {
+        final int i = s.choice();
+        if (i >= 0) {
+          final byte[] buffer = buffer(i, length);
+          final int n = deflate(i, data, length, buffer);
+          if (n >= 0 && n < size) {
+            compressed = buffer;
+            size = n;
+          }
+        }
+      }
+    }
+    s.sent.add(size);
+    if (compressed == null) {
+      return copy ? Arrays.copyOf(data, length) : data;
+    }
+    return Arrays.copyOf(compressed, size);
+  }
+
+  /**
+   * Returns a compression buffer of at least the given length for the given
+   * codec. Only buffers up to {@link #MAX_BUFFER_SIZE} bytes are kept for
+   * reuse.
+   *
+   * @param codec
+   *          the codec
+   * @param length
+   *          the minimal length of the buffer
+   * @return the buffer
+   */
+  private static byte[] buffer(int codec, int length) {
+    final byte[][] b = buffers.get();
+    if (b[codec] != null && b[codec].length >= length) {
+      return b[codec];
+    }
+    final byte[] buffer = new byte[length];
+    if (length <= MAX_BUFFER_SIZE) {
+      b[codec] = buffer;
+    }
+    return buffer;
+  }
+
+  /**
+   * Deflates a message with the given codec.
+   *
+   * @param codec
+   *          the codec
+   * @param data
+   *          the message starting at index 1
+   * @param length
+   *          the length of the message including the tag
+   * @param buffer
+   *          the destination buffer, at least {@code length} bytes long
+   * @return the length of the compressed message including its header or -1
+   *         if larger than the message
+   */
+  static int deflate(int codec, byte[] data, int length, byte[] buffer) {
+    final Deflater deflater = deflaters.get()[codec];
+    deflater.reset();
+    deflater.setInput(data, 1, length - 1);
+    deflater.finish();
+    int n = 5;
+    while (!deflater.finished() && n < length) {
+      n += deflater.deflate(buffer, n, length - n);
+    }
+    if (!deflater.finished()) {
+      return -1;
+    }
+    ByteBuffer.wrap(buffer).put(DEFLATED).putInt(length - 1);
+    return n;
+  }
+
+  /**
+   * Decompresses a message. Only invoked by the receive loop.
+   * <p>
+   * The result may alias the decompression buffer and is only valid until the
+   * next invocation. The uncompressed length read from the message is checked
+   * against the maximal compression ratio of deflate.
+   *
+   * @param data
+   *          the tagged message
+   * @return the message
+   * @throws DataFormatException
+   *           if the message is corrupted
+   */
+  ByteBuffer decompress(ByteBuffer data) throws DataFormatException {
+    if (data.get() == RAW) {
+      return data;
+    }
+    // independent of the byte order of the buffer
+    int length = 0;
+    for (int i = 0; i < 4; i++) {
+      length = (length << 8) | data.get() & 0xff;
+    }
+    if (length < 0 || length > MAX_RATIO * (long) data.remaining()) {
+      throw new DataFormatException("Invalid message length " + length);
+    }
+    byte[] buffer = inflated;
+    if (buffer.length < length) {
+      buffer = new byte[length];
+      if (length <= MAX_BUFFER_SIZE) {
+        inflated = buffer;
+      }
+    }
+    inflater.reset();
+    if (data.hasArray()) {
+      inflater.setInput(data.array(), data.arrayOffset() + data.position(),
+          data.remaining());
+    } else {
+      final byte[] bytes = new byte[data.remaining()];
+      data.get(bytes);
+      inflater.setInput(bytes);
+    }
+    int n = 0;
+    while (n < length) {
+      final int k = inflater.inflate(buffer, n, length - n);
+      if (k == 0 && (inflater.finished() || inflater.needsInput())) {
+        throw new DataFormatException("Truncated message");
+      }
+      n += k;
+    }
+    return ByteBuffer.wrap(buffer, 0, length);
+  }
+
+  /**
+   * Returns the number of bytes saved by compression for the given
+   * destination so far.
+   *
+   * @param place
+   *          the destination place ID
+   * @return the number of bytes saved
+   */
+  long getSavings(int place) {
+    final Stats s = stats.get(place);
+    return s == null ? 0 : s.raw.sum() - s.sent.sum();
+  }
+
+  /**
+   * Returns the codec chosen for the given destination based on the ratios
+   * sampled so far.
+   *
+   * @param place
+   *          the destination place ID
+   * @return the codec or -1 for none
+   */
+  int getChoice(int place) {
+    final Stats s = stats.get(place);
+    return s == null ? -1 : s.choice();
+  }
+
+  /**
+   * The {@link Stats} class records the compression statistics of a
+   * destination.
+   */
+  private static final class Stats {
+    /**
+     * The number of compressible messages.
+     */
+    final AtomicInteger count = new AtomicInteger();
+
+    /**
+     * The bytes before compression.
+     */
+    final LongAdder raw = new LongAdder();
+
+    /**
+     * The bytes after compression.
+     */
+    final LongAdder sent = new LongAdder();
+
+    /**
+     * The sampled compression ratios indexed by codec, NaN until sampled.
+     * Racy updates are harmless.
+     */
+    final double[] ratios = new double[LEVELS.length];
+
+    Stats() {
+      Arrays.fill(ratios, Double.NaN);
+    }
+
+    /**
+     * Records a compression ratio. The first sample is taken as is.
+     *
+     * @param codec
+     *          the codec
+     * @param ratio
+     *          the compressed size divided by the message size
+     */
+    void sample(int codec, double ratio) {
+      final double previous = ratios[codec];
+      ratios[codec] = Double.isNaN(previous) ? ratio : (previous + ratio) / 2;
+    }
+
+    /**
+     * Returns the codec to use based on the sampled ratios.
+     *
+     * @return the codec or -1 for none
+     */
+    int choice() {
+      final double fast = ratios[0];
+      final double compact = ratios[1];
+      if (Double.isNaN(fast) || Double.isNaN(compact)
+          || Math.min(fast, compact) > 1 - MIN_GAIN) {
+        return -1;
+      }
+      return compact < fast - MIN_EXTRA_GAIN ? 1 : 0;
+    }
+  }
+}
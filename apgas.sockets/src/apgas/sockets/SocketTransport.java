@@ -11,15 +11,19 @@
 
 package apgas.sockets;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
+import com.esotericsoftware.kryo.io.ByteBufferInput;
+import com.esotericsoftware.kryo.io.ByteBufferInputStream;
+import com.esotericsoftware.kryo.io.Output;
+
 import x10.network.NetworkTransportCallbacks;
 import apgas.DeadPlaceException;
 import apgas.Place;
@@ -40,7 +44,45 @@ public class SocketTransport extends Transport implements
   private final GlobalRuntimeImpl runtime;
   private final boolean useSnappy;
 
-  // private final Kryo kryo;
+  /**
+   * The per-message compressor or null if compression is not adaptive.
+   */
+  private final AdaptiveCompressor compressor;
+
+  /**
+   * An empty buffer used to release incoming messages once decoded.
+   */
+  private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+  /**
+   * The Kryo input reused by the receive loop for all incoming messages.
+   */
+  private final ByteBufferInput input = new ByteBufferInput(EMPTY);
+
+  /**
+   * Initial capacity of the send buffers.
+   */
+  private static final int BUFFER_SIZE = 4096;
+
+  /**
+   * Send buffers larger than this are not kept for reuse.
+   */
+  private static final int MAX_BUFFER_SIZE = 1 << 20;
+
+  /**
+   * The per-thread Kryo output reused for all outgoing messages. Its byte
+   * order must match the byte order of the {@link #input} of the receive
+   * loop.
+   */
+  private static final ThreadLocal<Output> outputs = ThreadLocal
+      .withInitial(() -> new Output(BUFFER_SIZE, -1));
+
+  /**
+   * The per-thread stream reused for outgoing messages when using Java
+   * serialization.
+   */
+  private static final ThreadLocal<ByteArrayOutputStream> streams = ThreadLocal
+      .withInitial(() -> new ByteArrayOutputStream(BUFFER_SIZE));
 
   /**
    * Initializes the {@link SocketTransport} for this global runtime instance.
@@ -54,14 +96,20 @@ public class SocketTransport extends Transport implements
    * @param compact
    *          reduces thread creation if set
    * @param kryo
-   *          todo
+   *          use kryo serialization if set
    */
   public SocketTransport(GlobalRuntimeImpl runtime, String master,
       String localhost, boolean compact, boolean kryo) {
     super(runtime, master == null ? null : master.split(",")[0], localhost,
         compact, kryo);
     this.runtime = runtime;
-    this.useSnappy = System.getProperty(apgas.impl.Config.APGAS_TRANSPORT_COMPRESSION, "snappy").equals("snappy");
+    final String compression = System.getProperty(
+        apgas.impl.Config.APGAS_TRANSPORT_COMPRESSION, "snappy");
+    this.useSnappy = compression.equals("snappy");
+    compressor = compression.equals("adaptive")
+        ? new AdaptiveCompressor(Integer.getInteger(
+            apgas.impl.Config.APGAS_TRANSPORT_COMPRESSION_THRESHOLD, 1024))
+        : null;
     localTransport = new x10.network.SocketTransport(this);
     if (master == null) {
       localTransport.establishLinks(0, null); // place 0
@@ -77,17 +125,6 @@ public class SocketTransport extends Transport implements
       runtime.updatePlaces(added, new ArrayList<Integer>(0));
     }
     immediateThreads = Executors.newCachedThreadPool();
-    /*
-     * kryo = new Kryo(); kryo.register(DeadPlaceError.class);
-     * kryo.register(DefaultFinish.class, new JavaSerializer());
-     * kryo.register(Finish.class); kryo.register(GlobalRuntimeImpl.class);
-     * kryo.register(NullFinish.class); kryo.register(ResilientFinish.class);
-     * kryo.register(ResilientFinishOpt.class);
-     * kryo.register(ResilientFinishState.class);
-     * kryo.register(SerializableRunnable.class);
-     * kryo.register(SerializableThrowable.class); kryo.register(Task.class, new
-     * JavaSerializer()); kryo.register(UncountedTask.class);
-     */
   }
 
   @Override
@@ -100,25 +137,8 @@ public class SocketTransport extends Transport implements
           final x10.network.SocketTransport.Message message = localTransport
               .x10rt_probe(x10.network.SocketTransport.PROBE_TYPE.ALL, true);
           if (message != null && message.callbackId != -1) {
-            byte[] data;
-            if (message.data.hasArray()) {
-              data = message.data.array();
-            } else {
-              data = new byte[message.data.remaining()];
-              message.data.get(data);
-            }
-            /*
-             * final Input input = new Input(data); final SerializableRunnable f
-             * = (SerializableRunnable) kryo .readClassAndObject(input);
-             */
-
             try {
-              final ObjectInputStream ois = new ObjectInputStream(
-                  new ByteArrayInputStream(data));
-              final SerializableRunnable f = (SerializableRunnable) ois
-                  .readObject();
-              ois.close();
-              immediateThreads.submit(f);
+              immediateThreads.submit(decode(message.data));
             } catch (final Exception e) {
               e.printStackTrace();
             }
@@ -128,6 +148,36 @@ public class SocketTransport extends Transport implements
     });
   }
 
+  /**
+   * Deserializes a message in place without copying the message buffer.
+   * <p>
+   * Only invoked by the receive loop. The reference to the buffer is dropped
+   * once the message is decoded so the buffer can be reclaimed.
+   *
+   * @param data
+   *          the message buffer
+   * @return the message
+   * @throws Exception
+   *           if deserialization fails
+   */
+  private SerializableRunnable decode(ByteBuffer data) throws Exception {
+    if (compressor != null) {
+      data = compressor.decompress(data);
+    }
+    if (kryo) {
+      input.setBuffer(data);
+      try {
+        return (SerializableRunnable) getKryo().readClassAndObject(input);
+      } finally {
+        input.setBuffer(EMPTY);
+      }
+    }
+    try (ObjectInputStream ois = new ObjectInputStream(
+        new ByteBufferInputStream(data))) {
+      return (SerializableRunnable) ois.readObject();
+    }
+  }
+
   @Override
   protected String getAddress() {
     return super.getAddress() + ',' + localTransport.getLocalConnectionInfo();
@@ -148,28 +198,101 @@ public class SocketTransport extends Transport implements
     if (place == here()) {
       f.run();
     } else {
+      final byte[] data;
       try {
-        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        final ObjectOutputStream oos = new ObjectOutputStream(baos);
-        oos.writeObject(f);
-        oos.close();
-        final byte[] data = baos.toByteArray();
-        if (localTransport.sendMessage(place, 0, data) != 0) {
-          throw new DeadPlaceException(new Place(place));
-        }
+        data = kryo ? encodeKryo(place, f) : encodeJava(place, f);
       } catch (final IOException e) {
         e.printStackTrace();
+        return;
+      }
+      if (localTransport.sendMessage(place, 0, data) != 0) {
+        throw new DeadPlaceException(new Place(place));
       }
-      /*
-       * final long freeMem = Runtime.getRuntime().freeMemory(); final Output
-       * output = new Output(4096, freeMem < Integer.MAX_VALUE ? (int) freeMem :
-       * Integer.MAX_VALUE); kryo.writeClassAndObject(output, f); //
-       * org.xerial.snappy.Snappy.compress(output.getBuffer(), arg1);
-       * localTransport.sendMessage(place, 0, output.getBuffer());
-       */
     }
   }
 
+  /**
+   * Returns the number of bytes saved by adaptive compression for messages to
+   * the given place so far.
+   *
+   * @param place
+   *          the destination place ID
+   * @return the number of bytes saved or 0 if compression is not adaptive
+   */
+  public long getCompressionSavings(int place) {
+    return compressor == null ? 0 : compressor.getSavings(place);
+  }
+
+  /**
+   * Serializes a message with Kryo into the reusable output of the current
+   * thread.
+   * <p>
+   * {@code x10.network.SocketTransport#sendMessage} takes a {@code byte[]}, so
+   * the message is copied out of the heap buffer once. A direct buffer would
+   * only add a second copy.
+   *
+   * @param place
+   *          the destination place ID
+   * @param f
+   *          the message
+   * @return the serialized message
+   */
+  private byte[] encodeKryo(int place, SerializableRunnable f) {
+    final Output output = outputs.get();
+    output.clear();
+    try {
+      if (compressor != null) {
+        // reserve the compression tag
+        output.setPosition(1);
+      }
+      final int previous = setDestination(place);
+      try {
+        getKryo().writeClassAndObject(output, f);
+      } finally {
+        setDestination(previous);
+      }
+      return compressor == null ? output.toBytes()
+          : compressor.compress(place, output.getBuffer(), output.position(),
+              true);
+    } finally {
+      if (output.getBuffer().length > MAX_BUFFER_SIZE) {
+        output.setBuffer(new byte[BUFFER_SIZE], -1);
+      }
+    }
+  }
+
+  /**
+   * Serializes a message with Java serialization into the reusable stream of
+   * the current thread.
+   *
+   * @param place
+   *          the destination place ID
+   * @param f
+   *          the message
+   * @return the serialized message
+   * @throws IOException
+   *           if serialization fails
+   */
+  private byte[] encodeJava(int place, SerializableRunnable f)
+      throws IOException {
+    ByteArrayOutputStream baos = streams.get();
+    baos.reset();
+    if (compressor != null) {
+      // reserve the compression tag
+      baos.write(0);
+    }
+    try (ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+      oos.writeObject(f);
+    }
+    final byte[] data = baos.toByteArray();
+    if (data.length > MAX_BUFFER_SIZE) {
+      baos = new ByteArrayOutputStream(BUFFER_SIZE);
+      streams.set(baos);
+    }
+    return compressor == null ? data
+        : compressor.compress(place, data, data.length, false);
+  }
+
   @Override
   protected synchronized void shutdown() {
     // super.shutdown();
@@ -227,6 +350,7 @@ public class SocketTransport extends Transport implements
 
   @Override
   public compressionCodec useCompressionCodec() {
+    // adaptive compression is done per message before reaching the link
     if (useSnappy) {
       return compressionCodec.SNAPPY;
     } else {
@@ -22,8 +22,10 @@ import org.junit.AfterClass;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import apgas.util.ArrayCopy;
 import apgas.util.GlobalRef;
 import apgas.util.PlaceLocalArray;
+import apgas.util.PlaceLocalIntArray;
 
 @SuppressWarnings("javadoc")
 public class ApgasTest {
@@ -71,6 +73,54 @@ public class ApgasTest {
     _a.free();
   }
 
+  @Test
+  public void testAsyncCopy() {
+    final double[] a = new double[100];
+    for (int i = 0; i < a.length; i++) {
+      a[i] = i;
+    }
+    final GlobalRef<double[]> _a = new GlobalRef<>(places(),
+        () -> new double[50]);
+    finish(() -> {
+      for (final Place p : places()) {
+        ArrayCopy.asyncCopy(a, 10, _a, p, 0, 50);
+      }
+    });
+    for (final Place p : places()) {
+      assertEquals(at(p, () -> _a.get()[49]), 59.0, 0);
+    }
+    _a.free();
+  }
+
+  @Test(expected = MultipleException.class)
+  public void testAsyncCopyMismatch() {
+    final GlobalRef<int[]> _a = new GlobalRef<>(places(), () -> new int[10]);
+    try {
+      finish(() -> ArrayCopy.asyncCopy(new double[10], 0, _a, place(1), 0,
+          10));
+    } finally {
+      _a.free();
+    }
+  }
+
+  @Test
+  public void testRemoteIntArray() {
+    final PlaceLocalIntArray a = PlaceLocalIntArray.make(places(), 10);
+    final Place p = place(1);
+    a.remotePut(p, 3, 40).get();
+    assertEquals(a.remoteAdd(p, 3, 2).get().intValue(), 40);
+    assertEquals(a.remoteGet(p, 3).get().intValue(), 42);
+    a.remotePut(p, new int[] { 0, 1 }, new int[] { 5, 6 }).get();
+    assertArrayEquals(a.remoteGet(p, new int[] { 0, 1, 3 }).get(),
+        new int[] { 5, 6, 42 });
+    assertEquals(at(p, () -> a.get(1)).intValue(), 6);
+    try {
+      a.remoteGet(p, 10).get();
+      fail();
+    } catch (final ArrayIndexOutOfBoundsException e) {
+    }
+  }
+
   @Test
   public void testPlaceLocalHandle() {
     final GlobalRef<Place> plh = new GlobalRef<>(places(), () -> here());
@@ -93,6 +143,15 @@ public class ApgasTest {
     }
   }
 
+  @Test
+  public void testAsyncAtAll() {
+    final PlaceLocalArray<Place> pla = PlaceLocalArray.make(places(), 1);
+    finish(() -> asyncAtAll(places(), () -> pla.set(0, here())));
+    for (final Place p : places()) {
+      assertEquals(at(p, () -> pla.get(0)), p);
+    }
+  }
+
   @Test(expected = IllegalArgumentException.class)
   public void testIllegalArgumentException() {
     place(-1);
@@ -142,6 +201,21 @@ public class ApgasTest {
     assertEquals(fib(10), 55);
   }
 
+  @Test(timeout = 60000)
+  public void testNestedFinishAcrossPlaces() {
+    // workers blocked in the inner finishes help with the tasks of the others
+    final int a[] = new int[8];
+    finish(() -> {
+      for (int i = 0; i < a.length; i++) {
+        final int j = i;
+        async(() -> a[j] = at(place(1), () -> at(place(0), () -> fib(j))));
+      }
+    });
+    for (int i = 0; i < a.length; i++) {
+      assertEquals(a[i], fib(i));
+    }
+  }
+
   // @SuppressWarnings("serial")
   @Test(expected = RuntimeException.class)
   public void testSerializationException() throws Throwable {
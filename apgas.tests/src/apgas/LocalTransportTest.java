@@ -0,0 +1,36 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package apgas;
+
+import org.junit.BeforeClass;
+
+import apgas.impl.Config;
+
+/**
+ * Runs {@link ApgasTest} over {@code apgas.impl.LocalTransport}, i.e., with all
+ * the places inside the JVM of the test, and with blocked workers helping with
+ * the tasks of any finish.
+ * <p>
+ * The global runtime is instantiated once per JVM, hence this test must run in
+ * a JVM of its own.
+ */
+@SuppressWarnings("javadoc")
+public class LocalTransportTest extends ApgasTest {
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    System.setProperty(Configuration.APGAS_PLACES, "4");
+    System.setProperty(Config.APGAS_TRANSPORT, "apgas.impl.LocalTransport");
+    System.setProperty(Config.APGAS_FINISH_HELP_DEPTH, "32");
+    GlobalRuntime.getRuntime();
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package apgas;
+
+import static apgas.Constructs.*;
+import static org.junit.Assert.*;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import apgas.impl.Config;
+import apgas.util.GlobalRef;
+
+/**
+ * Runs {@link ApgasTest} over {@code apgas.impl.NioTransport} with a small
+ * credit window, a single outgoing link per place, and two serializer threads.
+ * <p>
+ * The global runtime is instantiated once per JVM, hence this test must run in
+ * a JVM of its own.
+ */
+@SuppressWarnings("javadoc")
+public class NioTransportTest extends ApgasTest {
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    System.setProperty(Configuration.APGAS_PLACES, "4");
+    System.setProperty(Config.APGAS_TRANSPORT, "apgas.impl.NioTransport");
+    System.setProperty(Config.APGAS_TRANSPORT_CREDITS, "4096");
+    System.setProperty(Config.APGAS_TRANSPORT_MAX_LINKS, "1");
+    System.setProperty(Config.APGAS_TRANSPORT_LINK_IDLE, "100");
+    System.setProperty(Config.APGAS_TRANSPORT_SERIALIZERS, "2");
+    GlobalRuntime.getRuntime();
+  }
+
+  static class Unserializable implements java.io.Serializable {
+    private static final long serialVersionUID = 4781216382529717310L;
+
+    public Object writeReplace() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private static boolean causedBy(Throwable t,
+      Class<? extends Throwable> type) {
+    for (; t != null; t = t.getCause()) {
+      if (type.isInstance(t)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Test(timeout = 60000)
+  public void testSerializationFailureOnSerializer() {
+    // the task fails to serialize on a serializer thread after asyncAt returns
+    final Object obj = new Unserializable();
+    try {
+      finish(() -> {
+        asyncAt(place(1), () -> obj.toString());
+        asyncAt(place(2), () -> {
+        });
+      });
+      fail();
+    } catch (final MultipleException e) {
+      assertEquals(1, e.getSuppressed().length);
+      assertTrue(causedBy(e.getSuppressed()[0],
+          UnsupportedOperationException.class));
+    }
+  }
+
+  @Test(timeout = 60000)
+  public void testManyAsyncAt() {
+    // the serializer threads share the links and the credit windows
+    final int[] a = new int[1000];
+    final GlobalRef<int[]> _a = new GlobalRef<>(a);
+    finish(() -> {
+      for (int i = 0; i < a.length; i++) {
+        final int j = i;
+        asyncAt(place(1 + j % 3),
+            () -> asyncAt(_a.home(), () -> _a.get()[j] = j + 1));
+      }
+    });
+    for (int i = 0; i < a.length; i++) {
+      assertEquals(i + 1, a[i]);
+    }
+    _a.free();
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package apgas.impl;
+
+import static apgas.Constructs.*;
+import static org.junit.Assert.*;
+
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Output;
+
+import apgas.Configuration;
+import apgas.GlobalRuntime;
+import apgas.Place;
+
+/**
+ * Tests the cluster-wide class IDs of {@link ClassRegistry}, including a place
+ * launched after the IDs have been assigned.
+ * <p>
+ * The global runtime is instantiated once per JVM, hence this test must run in
+ * a JVM of its own.
+ */
+@SuppressWarnings("javadoc")
+public class ClassRegistryTest {
+
+  static class Probe implements Serializable {
+    private static final long serialVersionUID = 2283468419216245396L;
+    int value = 42;
+  }
+
+  static class Early implements Serializable {
+    private static final long serialVersionUID = -1930233391591512856L;
+    int value = 42;
+  }
+
+  private static Process late;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    System.setProperty(Configuration.APGAS_PLACES, "2");
+    GlobalRuntime.getRuntime();
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+    GlobalRuntime.getRuntime().shutdown();
+    if (late != null) {
+      late.destroy();
+      late.waitFor(10, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  public void testInstalledBeforeEnabled() throws Exception {
+    final String name = Probe.class.getName();
+    final int id = enable(Probe.class);
+    for (final Place place : places()) {
+      assertEquals(name, at(place, () -> ClassRegistry.name(id)));
+    }
+  }
+
+  @Test
+  public void testNamesForUnreadyDestination() throws Exception {
+    enable(Early.class);
+    awaitReady(1);
+    assertFalse(ClassRegistry.ready(-1));
+    assertFalse(ClassRegistry.ready(places().size() + 42));
+    assertFalse(writesName(1));
+    assertTrue(writesName(-1));
+    assertTrue(writesName(places().size() + 42));
+  }
+
+  @Test
+  public void testLateJoiningPlace() throws Exception {
+    final String name = Early.class.getName();
+    final int id = enable(Early.class);
+    final int size = places().size();
+
+    final ArrayList<String> command = new ArrayList<>();
+    command.add(System.getProperty(Config.APGAS_JAVA, "java"));
+    for (final String argument : ManagementFactory.getRuntimeMXBean()
+        .getInputArguments()) {
+      if (argument.startsWith("--add-opens=")
+          || argument.startsWith("--add-exports=")) {
+        command.add(argument);
+      }
+    }
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add("-D" + Configuration.APGAS_PLACES + "=" + size);
+    command.add("-D" + Configuration.APGAS_MASTER + "="
+        + GlobalRuntimeImpl.getRuntime().transport.getAddress());
+    command.add(GlobalRuntime.class.getName());
+    late = new ProcessBuilder(command).inheritIO().start();
+
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+    while (places().size() == size) {
+      assertTrue("no place joined", System.nanoTime() < deadline);
+      Thread.sleep(100);
+    }
+    final Place place = places().get(size);
+    awaitReady(place.id);
+
+    // the mapping assigned before the place joined has been installed
+    assertEquals(name, at(place, () -> ClassRegistry.name(id)));
+    assertTrue(at(place, () -> ClassRegistry.ready(0)));
+
+    // the new place decodes the ID
+    assertFalse(writesName(place.id));
+    final Early early = new Early();
+    assertEquals(42, (int) at(place, () -> early.value));
+  }
+
+  /**
+   * Waits for the class to be enabled at place 0.
+   */
+  private static int enable(Class<?> type) throws InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    int id;
+    while ((id = ClassRegistry.id(type)) < 0) {
+      assertTrue("no ID enabled", System.nanoTime() < deadline);
+      Thread.sleep(10);
+    }
+    return id;
+  }
+
+  /**
+   * Waits for a place to be ready at place 0.
+   */
+  private static void awaitReady(int place) throws InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (!ClassRegistry.ready(place)) {
+      assertTrue("place not ready", System.nanoTime() < deadline);
+      Thread.sleep(10);
+    }
+  }
+
+  /**
+   * Serializes an {@link Early} instance for a destination. Kryo flags the
+   * last character of ASCII strings, hence the class name is truncated.
+   */
+  private static boolean writesName(int place) {
+    final String name = Early.class.getName();
+    final Kryo kryo = KryoSerializer.kryoThreadLocal.get();
+    final Output output = new Output(256, -1);
+    final int previous = ClassRegistry.destination(kryo, place);
+    try {
+      kryo.writeClassAndObject(output, new Early());
+    } finally {
+      ClassRegistry.destination(kryo, previous);
+    }
+    return new String(output.toBytes(), StandardCharsets.ISO_8859_1)
+        .contains(name.substring(0, name.length() - 1));
+  }
+}
@@ -0,0 +1,159 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2015
+ */
+
+package apgas.sockets;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+
+import org.junit.Test;
+
+/**
+ * Tests the round trip of messages through {@link AdaptiveCompressor}.
+ */
+@SuppressWarnings("javadoc")
+public class AdaptiveCompressorTest {
+
+  /**
+   * Returns a message of the given length with a reserved tag byte and a
+   * compressible payload.
+   */
+  private static byte[] text(int length) {
+    final byte[] bytes = "apgas compresses this text quite well "
+        .getBytes(StandardCharsets.US_ASCII);
+    final byte[] data = new byte[length];
+    for (int i = 1; i < length; i++) {
+      data[i] = bytes[i % bytes.length];
+    }
+    return data;
+  }
+
+  /**
+   * Returns a message of the given length with a reserved tag byte and an
+   * incompressible payload.
+   */
+  private static byte[] noise(int length) {
+    final byte[] data = new byte[length];
+    new Random(42).nextBytes(data);
+    return data;
+  }
+
+  private static byte[] decompress(AdaptiveCompressor compressor,
+      byte[] message, int length) throws DataFormatException {
+    final ByteBuffer buffer = compressor
+        .decompress(ByteBuffer.wrap(message, 0, length));
+    final byte[] result = new byte[buffer.remaining()];
+    buffer.get(result);
+    return result;
+  }
+
+  private static void assertRoundTrip(byte[] data, byte[] result) {
+    assertArrayEquals(Arrays.copyOfRange(data, 1, data.length), result);
+  }
+
+  @Test
+  public void testRawBelowThreshold() throws DataFormatException {
+    final AdaptiveCompressor compressor = new AdaptiveCompressor(1024);
+    final byte[] data = text(100);
+    final byte[] message = compressor.compress(1, data.clone(), data.length,
+        true);
+    assertEquals(AdaptiveCompressor.RAW, message[0]);
+    assertEquals(data.length, message.length);
+    assertRoundTrip(data, decompress(compressor, message, message.length));
+    assertEquals(0, compressor.getSavings(1));
+  }
+
+  @Test
+  public void testRawIncompressible() throws DataFormatException {
+    final AdaptiveCompressor compressor = new AdaptiveCompressor(16);
+    final byte[] data = noise(4096);
+    assertEquals(-1, compressor.getChoice(1));
+    for (int i = 0; i < 40; i++) {
+      final byte[] message = compressor.compress(1, data.clone(), data.length,
+          false);
+      assertEquals(AdaptiveCompressor.RAW, message[0]);
+      assertRoundTrip(data, decompress(compressor, message, message.length));
+      // the first sample alone must rule out compression
+      assertEquals(-1, compressor.getChoice(1));
+    }
+    assertEquals(0, compressor.getSavings(1));
+  }
+
+  @Test
+  public void testDeflated() throws DataFormatException {
+    final AdaptiveCompressor compressor = new AdaptiveCompressor(16);
+    final byte[] data = text(4096);
+    // covers the sampled messages and the messages using the chosen codec
+    for (int i = 0; i < 40; i++) {
+      final byte[] message = compressor.compress(1, data.clone(), data.length,
+          true);
+      assertEquals(AdaptiveCompressor.DEFLATED, message[0]);
+      assertTrue(message.length < data.length);
+      assertRoundTrip(data, decompress(compressor, message, message.length));
+      assertTrue(compressor.getChoice(1) >= 0);
+    }
+    assertTrue(compressor.getSavings(1) > 0);
+    assertEquals(0, compressor.getSavings(2));
+  }
+
+  @Test
+  public void testEachCodec() throws DataFormatException {
+    final AdaptiveCompressor compressor = new AdaptiveCompressor(16);
+    final byte[] data = text(4096);
+    for (int codec = 0; codec < 2; codec++) {
+      final byte[] buffer = new byte[data.length];
+      final int n = AdaptiveCompressor.deflate(codec, data, data.length,
+          buffer);
+      assertTrue(n > 0 && n < data.length);
+      assertRoundTrip(data, decompress(compressor, buffer, n));
+    }
+  }
+
+  @Test
+  public void testLargeMessages() throws DataFormatException {
+    final AdaptiveCompressor compressor = new AdaptiveCompressor(16);
+    final byte[] large = text(3 << 20);
+    final byte[] small = text(1000);
+    for (int i = 0; i < 3; i++) {
+      final byte[] message = compressor.compress(1, large.clone(),
+          large.length, true);
+      assertEquals(AdaptiveCompressor.DEFLATED, message[0]);
+      assertRoundTrip(large, decompress(compressor, message, message.length));
+      final byte[] next = compressor.compress(1, small.clone(), small.length,
+          true);
+      assertRoundTrip(small, decompress(compressor, next, next.length));
+    }
+  }
+
+  @Test(expected = DataFormatException.class)
+  public void testInvalidLength() throws DataFormatException {
+    final AdaptiveCompressor compressor = new AdaptiveCompressor(16);
+    final byte[] data = text(4096);
+    final byte[] message = compressor.compress(1, data.clone(), data.length,
+        true);
+    ByteBuffer.wrap(message).putInt(1, Integer.MAX_VALUE);
+    compressor.decompress(ByteBuffer.wrap(message));
+  }
+
+  @Test(expected = DataFormatException.class)
+  public void testTruncated() throws DataFormatException {
+    final AdaptiveCompressor compressor = new AdaptiveCompressor(16);
+    final byte[] data = text(4096);
+    final byte[] message = compressor.compress(1, data.clone(), data.length,
+        true);
+    compressor.decompress(ByteBuffer.wrap(message, 0, message.length / 2));
+  }
+}
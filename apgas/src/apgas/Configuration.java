@@ -64,12 +64,32 @@ public final class Configuration {
    */
   public static final String APGAS_THREADS = "apgas.threads";
 
+  /**
+   * Property {@value #APGAS_SERIALIZATION_CLASSES} specifies a comma-separated
+   * list of classes to register with the serialization framework at startup
+   * (String property).
+   * <p>
+   * Registered classes are identified by number rather than name in messages.
+   * Other classes are assigned numbers on first use. The list must be the same
+   * at every place.
+   */
+  public static final String APGAS_SERIALIZATION_CLASSES = "apgas.serialization.classes";
+
   /**
    * Property {@value #APGAS_VERBOSE_SERIALIZATION} controls the verbosity of
    * the serialization (Boolean property).
    */
   public static final String APGAS_VERBOSE_SERIALIZATION = "apgas.verbose.serialization";
 
+  /**
+   * Property {@value #APGAS_PROFILE_SERIALIZATION} enables the profiling of the
+   * serialized size and serialization time of remote tasks (Boolean property).
+   * <p>
+   * If set, each place prints statistics per lambda implementation method or
+   * function class on exit. See {@link apgas.impl.SerializationProfiler}.
+   */
+  public static final String APGAS_PROFILE_SERIALIZATION = "apgas.profile.serialization";
+
   /**
    * Property {@value #APGAS_VERBOSE_LAUNCHER} controls the verbosity of the
    * launcher (Boolean property).
@@ -12,6 +12,7 @@
 package apgas;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.Callable;
 
@@ -75,6 +76,10 @@ public final class Constructs {
   /**
    * Submits a new task to the global runtime to be run at {@link Place}
    * {@code p} with body {@code f} and returns immediately.
+   * <p>
+   * The state captured by {@code f} is normally copied before this method
+   * returns. With {@code apgas.transport.serializers} set, it is copied later
+   * and must not be modified until the enclosing finish completes.
    *
    * @param p
    *          the place of execution
@@ -85,6 +90,24 @@ public final class Constructs {
     GlobalRuntime.getRuntimeImpl().asyncAt(p, f);
   }
 
+  /**
+   * Submits a task to the global runtime to be run at each {@link Place} in
+   * {@code places} with body {@code f} and returns immediately.
+   * <p>
+   * Equivalent to {@code places.forEach(p -> asyncAt(p, f))} except that
+   * {@code f} is serialized once and forwarded along a spanning tree of the
+   * places.
+   *
+   * @param places
+   *          the places of execution
+   * @param f
+   *          the function to run
+   */
+  public static void asyncAtAll(Collection<? extends Place> places,
+      SerializableJob f) {
+    GlobalRuntime.getRuntimeImpl().asyncAtAll(places, f);
+  }
+
   /**
    * Submits an uncounted task to the global runtime to be run at {@link Place}
    * {@code p} with body {@code f} and returns immediately. The termination of
@@ -100,6 +123,24 @@ public final class Constructs {
     GlobalRuntime.getRuntimeImpl().uncountedAsyncAt(p, f);
   }
 
+  /**
+   * Submits an uncounted control task to the global runtime to be run at
+   * {@link Place} {@code p} with body {@code f} and returns immediately.
+   * <p>
+   * Same as {@link #uncountedAsyncAt(Place, SerializableJob)} except that the
+   * task is sent ahead of bulk transfers to the same place if the transport
+   * permits. Control tasks should be small and short-lived, e.g., work stealing
+   * requests and replies.
+   *
+   * @param p
+   *          the place of execution
+   * @param f
+   *          the function to run
+   */
+  public static void controlAsyncAt(Place p, SerializableJob f) {
+    GlobalRuntime.getRuntimeImpl().controlAsyncAt(p, f);
+  }
+
   /**
    * Evaluates {@code f} at {@link Place} {@code p}, waits for all the tasks
    * transitively spawned by {@code f}, and returns the result.
@@ -132,6 +173,22 @@ public final class Constructs {
     GlobalRuntime.getRuntimeImpl().at(p, f);
   }
 
+  /**
+   * Runs {@code f} at each place in {@code places} and waits for all the tasks
+   * transitively spawned by these runs.
+   * <p>
+   * Equivalent to {@code finish(() -> asyncAtAll(places, f))}.
+   *
+   * @param places
+   *          the places of execution
+   * @param f
+   *          the function to run
+   */
+  public static void broadcast(Collection<? extends Place> places,
+      SerializableJob f) {
+    GlobalRuntime.getRuntimeImpl().broadcast(places, f);
+  }
+
   /**
    * Returns the current {@link Place}.
    *
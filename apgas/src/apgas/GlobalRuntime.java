@@ -62,7 +62,8 @@ public abstract class GlobalRuntime {
    * @return the GlobalRuntimeImpl instance
    */
   static GlobalRuntimeImpl getRuntimeImpl() {
-    return GlobalRuntimeWrapper.runtime;
+    final GlobalRuntimeImpl runtime = GlobalRuntimeWrapper.runtime;
+    return runtime == null ? null : GlobalRuntimeImpl.getRuntime();
   }
 
   /**
@@ -0,0 +1,367 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package apgas.impl;
+
+import static apgas.Constructs.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.Registration;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.util.DefaultClassResolver;
+import com.esotericsoftware.kryo.util.IntMap;
+
+import apgas.Configuration;
+import apgas.Place;
+
+/**
+ * The {@link ClassRegistry} class assigns cluster-wide numeric IDs to the
+ * classes serialized with Kryo.
+ * <p>
+ * Kryo writes the name of every class that is not registered in every message.
+ * The first time a place writes such a class, it asks place 0 for an ID. Place
+ * 0 assigns the next ID, installs the mapping at all places, and only then
+ * enables the mapping at all places.
+ * <p>
+ * A place joining the cluster later is not ready to decode IDs. Place 0 first
+ * installs all the assigned mappings at the new place, then marks the new
+ * place as ready at all places. Messages carry the ID of a class instead of
+ * its name only if the ID is enabled and the destination of the message is
+ * ready. Transports record the destination of a message with
+ * {@link #destination(Kryo, int)} while serializing it.
+ * <p>
+ * The classes listed in {@link Configuration#APGAS_SERIALIZATION_CLASSES} are
+ * registered up front with fixed IDs at every place.
+ */
+final class ClassRegistry {
+  /**
+   * The ID of the first class listed in
+   * {@link Configuration#APGAS_SERIALIZATION_CLASSES}.
+   */
+  static final int PREREGISTERED = 100;
+
+  /**
+   * The first ID assigned at run time.
+   */
+  static final int DYNAMIC = 1024;
+
+  /**
+   * The enabled IDs indexed by class name.
+   */
+  private static final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+  /**
+   * The installed class names indexed by ID.
+   */
+  private static final Map<Integer, String> names = new ConcurrentHashMap<>();
+
+  /**
+   * The class names for which an ID has been requested by this place.
+   */
+  private static final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+  /**
+   * The IDs assigned by place 0 indexed by class name.
+   */
+  private static final Map<String, Integer> assigned = new ConcurrentHashMap<>();
+
+  /**
+   * The IDs of the places known to have installed all the assigned mappings.
+   */
+  private static final Set<Integer> ready = ConcurrentHashMap.newKeySet();
+
+  static {
+    ready.add(0);
+  }
+
+  /**
+   * The next ID to assign at place 0.
+   */
+  private static final AtomicInteger next = new AtomicInteger(DYNAMIC);
+
+  /**
+   * Prevents instantiation.
+   */
+  private ClassRegistry() {
+  }
+
+  /**
+   * Registers the classes listed in
+   * {@link Configuration#APGAS_SERIALIZATION_CLASSES} with a Kryo instance.
+   * <p>
+   * The IDs only depend on the position of the classes in the list. Classes
+   * that cannot be loaded are skipped.
+   *
+   * @param kryo
+   *          the Kryo instance
+   */
+  static void preregister(Kryo kryo) {
+    final String list = System
+        .getProperty(Configuration.APGAS_SERIALIZATION_CLASSES);
+    if (list == null) {
+      return;
+    }
+    final String[] classes = list.split(",");
+    for (int i = 0; i < classes.length
+        && PREREGISTERED + i < DYNAMIC; i++) {
+      try {
+        kryo.register(Class.forName(classes[i].trim(), false,
+            kryo.getClassLoader()), PREREGISTERED + i);
+      } catch (final ClassNotFoundException e) {
+        System.err.println("[APGAS] Failed to preregister class "
+            + classes[i].trim() + " due to: " + e);
+      }
+    }
+  }
+
+  /**
+   * Returns the enabled ID of a class. Requests an ID from place 0 if none has
+   * been requested yet.
+   *
+   * @param type
+   *          the class
+   * @return the ID or -1 if not available yet
+   */
+  static int id(Class<?> type) {
+    final String name = type.getName();
+    final Integer id = ids.get(name);
+    if (id != null) {
+      return id;
+    }
+    final GlobalRuntimeImpl runtime = GlobalRuntimeImpl.getRuntime();
+    if (runtime != null && pending.add(name)) {
+      // serialization may be in progress on this thread
+      runtime.execute(new RecursiveAction() {
+        private static final long serialVersionUID = 7526532436427407405L;
+
+        @Override
+        protected void compute() {
+          Worker.setTask(null);
+          try {
+            final int requester = here().id;
+            uncountedAsyncAt(place(0), () -> assign(name, requester));
+          } catch (final Throwable e) {
+            pending.remove(name);
+          }
+        }
+      });
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the name of the class with the given ID.
+   *
+   * @param id
+   *          an ID
+   * @return the class name or null if not installed at this place
+   */
+  static String name(int id) {
+    return names.get(id);
+  }
+
+  /**
+   * Returns true if a place is ready to decode the enabled IDs.
+   *
+   * @param place
+   *          a place ID
+   * @return true if ready
+   */
+  static boolean ready(int place) {
+    return place >= 0 && ready.contains(place);
+  }
+
+  /**
+   * Records the destination of the messages serialized with a Kryo instance.
+   *
+   * @param kryo
+   *          a Kryo instance using a {@link Resolver}
+   * @param place
+   *          the ID of the destination place or -1 if unknown
+   * @return the previous destination
+   */
+  static int destination(Kryo kryo, int place) {
+    final Resolver resolver = (Resolver) kryo.getClassResolver();
+    final int previous = resolver.destination;
+    resolver.destination = place;
+    return previous;
+  }
+
+  /**
+   * Assigns an ID to a class, installs it at all places, then enables it at
+   * all places. Runs at place 0.
+   * <p>
+   * If the class already has an ID, enables it at the requesting place once
+   * enabled at place 0, e.g., for places added after the ID was assigned.
+   * <p>
+   * The ID is not enabled if a live place failed to install it.
+   *
+   * @param name
+   *          the class name
+   * @param requester
+   *          the ID of the requesting place
+   */
+  private static void assign(String name, int requester) {
+    final Integer previous = assigned.get(name);
+    if (previous != null) {
+      if (ids.containsKey(name)) {
+        uncountedAsyncAt(place(requester), () -> ids.put(name, previous));
+      }
+      return;
+    }
+    final int id = next.getAndIncrement();
+    if (assigned.putIfAbsent(name, id) != null) {
+      return;
+    }
+    // places added from now on obtain the mapping from update
+    final List<? extends Place> places = places();
+    try {
+      broadcast(places, () -> names.put(id, name));
+    } catch (final Throwable e) {
+      // find out which places failed, dead places do not need the mapping
+      for (final Place place : places) {
+        try {
+          finish(() -> asyncAt(place, () -> names.put(id, name)));
+        } catch (final Throwable t) {
+          if (places().contains(place)) {
+            return;
+          }
+        }
+      }
+    }
+    broadcast(places, () -> ids.put(name, id));
+  }
+
+  /**
+   * Installs the assigned mappings at a new place, then marks the new place
+   * as ready at all places. Runs at place 0.
+   * <p>
+   * The new place must already be listed in {@link GlobalRuntimeImpl#places()}
+   * so that the mappings assigned concurrently are either listed here or
+   * broadcast to the new place by {@link #assign(String, int)}.
+   *
+   * @param runtime
+   *          the runtime of place 0
+   * @param place
+   *          the new place
+   */
+  static void update(GlobalRuntimeImpl runtime, Place place) {
+    runtime.execute(new RecursiveAction() {
+      private static final long serialVersionUID = -4400962733744735412L;
+
+      @Override
+      protected void compute() {
+        Worker.setTask(null);
+        // plain arrays: Kryo does not instantiate hash-based collections
+        final String[] mapped = assigned.keySet().toArray(new String[0]);
+        final int[] indices = new int[mapped.length];
+        for (int i = 0; i < mapped.length; i++) {
+          indices[i] = assigned.get(mapped[i]);
+        }
+        final Integer[] destinations = ready.toArray(new Integer[0]);
+        final int id = place.id;
+        try {
+          finish(() -> asyncAt(place, () -> {
+            for (int i = 0; i < mapped.length; i++) {
+              names.put(indices[i], mapped[i]);
+            }
+            ready.addAll(Arrays.asList(destinations));
+          }));
+          broadcast(places(), () -> ready.add(id));
+        } catch (final Throwable e) {
+          // places not marking the new place as ready keep writing names
+        }
+      }
+    });
+  }
+
+  /**
+   * A Kryo class resolver that writes the IDs of registered classes instead of
+   * their names when enabled and the destination is ready.
+   */
+  static class Resolver extends DefaultClassResolver {
+    /**
+     * The ID of the destination place or -1 if unknown.
+     */
+    int destination = -1;
+
+    /**
+     * The registrations of the classes with IDs assigned at run time.
+     */
+    private final IntMap<Registration> dynamic = new IntMap<>();
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public Registration writeClass(Output output, Class type) {
+      if (type != null) {
+        final Registration registration = kryo.getRegistration(type);
+        if (registration.getId() == NAME) {
+          final int id = id(type);
+          if (id >= 0 && ready(destination)) {
+            output.writeVarInt(id + 2, true);
+            return registration;
+          }
+        }
+      }
+      return super.writeClass(output, type);
+    }
+
+    @Override
+    public Registration readClass(Input input) {
+      final int id = input.readVarInt(true);
+      switch (id) {
+      case Kryo.NULL:
+        return null;
+      case NAME + 2:
+        return readName(input);
+      }
+      if (id - 2 >= DYNAMIC) {
+        return dynamic(id - 2);
+      }
+      final Registration registration = getRegistration(id - 2);
+      if (registration == null) {
+        throw new KryoException("Encountered unregistered class ID: " + id);
+      }
+      return registration;
+    }
+
+    /**
+     * Returns the registration of a class with an ID assigned at run time.
+     */
+    private Registration dynamic(int id) {
+      Registration registration = dynamic.get(id);
+      if (registration == null) {
+        final String name = name(id);
+        if (name == null) {
+          throw new KryoException("Encountered unregistered class ID: " + id);
+        }
+        try {
+          registration = kryo.getRegistration(
+              Class.forName(name, false, kryo.getClassLoader()));
+        } catch (final ClassNotFoundException e) {
+          throw new KryoException("Unable to find class: " + name, e);
+        }
+        dynamic.put(id, registration);
+      }
+      return registration;
+    }
+  }
+}
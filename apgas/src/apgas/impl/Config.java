@@ -26,9 +26,14 @@ public final class Config {
    * Name of the network transport class implementation to instantiate (String
    * property).
    * <p>
-   * Currently "{@code apgas.impl.Transport}" and "
+   * Currently "{@code apgas.impl.Transport}", "
+   * {@code apgas.impl.NioTransport}", "{@code apgas.impl.ShmTransport}", "
+   * {@code apgas.impl.LocalTransport}" and "
    * {@code apgas.sockets.SocketTransport}" are supported. Defaults to "
    * {@code apgas.impl.Transport}".
+   * <p>
+   * With "{@code apgas.impl.LocalTransport}" all the places run inside the
+   * JVM of the first place. This transport does not support resilient mode.
    *
    */
   public static final String APGAS_TRANSPORT = "apgas.transport";
@@ -37,18 +42,186 @@ public final class Config {
    * Enables or disables compression on the network links when using transport "
    * {@code apgas.sockets.SocketTransport}".
    * <p>
-   * Set to "none" or "snappy", which is the default.
+   * Set to "none", "snappy", which is the default, or "adaptive". With
+   * "adaptive", each message above {@link #APGAS_TRANSPORT_COMPRESSION_THRESHOLD}
+   * is compressed with the deflate level that works best for its destination
+   * according to sampled compression ratios, if any.
    */
   public static final String APGAS_TRANSPORT_COMPRESSION = "apgas.transport.compression";
 
   /**
-   * Upper bound on the number of persistent threads in the thread pool (Integer
-   * property).
+   * Size in bytes below which messages are not compressed when using adaptive
+   * compression (Integer property).
+   * <p>
+   * Defaults to 1024.
+   */
+  public static final String APGAS_TRANSPORT_COMPRESSION_THRESHOLD = "apgas.transport.compression.threshold";
+
+  /**
+   * Enables message coalescing when using transport "
+   * {@code apgas.impl.NioTransport}" (Integer property).
+   * <p>
+   * Messages bound to the same place are aggregated until the batch reaches
+   * this size in bytes. Defaults to 0, i.e., no coalescing.
+   */
+  public static final String APGAS_TRANSPORT_COALESCING_SIZE = "apgas.transport.coalescing.size";
+
+  /**
+   * Upper bound on the time a message may wait in a batch in microseconds when
+   * coalescing is enabled (Integer property).
+   * <p>
+   * Defaults to 100.
+   */
+  public static final String APGAS_TRANSPORT_COALESCING_DELAY = "apgas.transport.coalescing.delay";
+
+  /**
+   * Capacity in bytes of each shared memory ring buffer when using transport "
+   * {@code apgas.impl.ShmTransport}" (Integer property).
+   * <p>
+   * Rounded down to a power of two. Defaults to 4194304 (4 MiB).
+   */
+  public static final String APGAS_TRANSPORT_SHM_SIZE = "apgas.transport.shm.size";
+
+  /**
+   * Enables credit-based flow control when using transport "
+   * {@code apgas.impl.NioTransport}" (Integer property).
+   * <p>
+   * Bounds the number of bytes sent to a place and not yet consumed by the
+   * pool of this place. Senders block once the budget is exhausted. Defaults
+   * to 0, i.e., no flow control.
+   */
+  public static final String APGAS_TRANSPORT_CREDITS = "apgas.transport.credits";
+
+  /**
+   * Caps the number of outgoing links of a place when using transport "
+   * {@code apgas.impl.NioTransport}" (Integer property).
+   * <p>
+   * Links are opened on first use. Once the cap is reached, opening a link
+   * closes the least recently used idle link. Defaults to 0, i.e., no cap.
+   */
+  public static final String APGAS_TRANSPORT_MAX_LINKS = "apgas.transport.links.max";
+
+  /**
+   * Closes the outgoing links idle for this many milliseconds when using
+   * transport "{@code apgas.impl.NioTransport}" (Integer property).
+   * <p>
+   * Defaults to 0, i.e., idle links are kept open.
+   */
+  public static final String APGAS_TRANSPORT_LINK_IDLE = "apgas.transport.links.idle";
+
+  /**
+   * Number of threads serializing outgoing tasks when using transport "
+   * {@code apgas.impl.NioTransport}" (Integer property).
+   * <p>
+   * If set, spawning a remote task only enqueues it and the serialization and
+   * write happen on these threads. Failures are then reported to the finish
+   * of the task. Defaults to 0, i.e., tasks are serialized by the spawning
+   * thread.
+   * <p>
+   * Since serialization is deferred, the state captured by a remote task is no
+   * longer copied when the task is spawned. It must not be modified until the
+   * enclosing finish completes, or, for an uncounted task, until the task runs
+   * at its destination. Otherwise the destination may observe the modification
+   * or the serialization may fail.
+   */
+  public static final String APGAS_TRANSPORT_SERIALIZERS = "apgas.transport.serializers";
+
+  /**
+   * Delivers remote tasks as Hazelcast operations when using transport "
+   * {@code apgas.impl.Transport}" (Boolean property).
+   * <p>
+   * The operation threads of Hazelcast then decode the remote tasks and push
+   * them into the pool directly, skipping the executor stage. Tasks fall back
+   * to the executor service if no connection to the destination is open, but
+   * a task written to a connection that fails before delivery is lost
+   * silently. Defaults to false.
+   */
+  public static final String APGAS_TRANSPORT_DIRECT = "apgas.transport.direct";
+
+  /**
+   * Fan-out of the spanning trees used to broadcast tasks to groups of places
+   * (Integer property).
+   * <p>
+   * Defaults to 8. Ignored in resilient mode, where the initiating place sends
+   * to every place directly so that a failure cannot hide a subtree.
+   */
+  public static final String APGAS_BROADCAST_ARITY = "apgas.broadcast.arity";
+
+  /**
+   * Upper bound on the number of threads in the thread pool including the
+   * spare threads compensating for blocked threads (Integer property).
    * <p>
    * Defaults to 256.
    */
   public static final String APGAS_MAX_THREADS = "apgas.max.threads";
 
+  /**
+   * Minimum number of running threads the thread pool maintains by adding
+   * spare threads when threads block in a finish (Integer property).
+   * <p>
+   * Defaults to {@link apgas.Configuration#APGAS_THREADS}. Requires Java 9 or
+   * later. With Java 8, the pool always compensates.
+   */
+  public static final String APGAS_MIN_RUNNABLE_THREADS = "apgas.min.runnable.threads";
+
+  /**
+   * Time in milliseconds an idle spare thread waits for work before
+   * terminating (Long property).
+   * <p>
+   * Defaults to 60000. Requires Java 9 or later.
+   * <p>
+   * Short times make the pool terminate and restart spare threads between the
+   * blocking episodes of nested finishes. Known issue: with 10 ms on JDK
+   * 17.0.9 the pool has been observed to stall. The cause is unknown and the
+   * stall was not reproduced outside the APGAS runtime. It was not observed
+   * on JDK 21 or with 100 ms or more.
+   */
+  public static final String APGAS_KEEP_ALIVE = "apgas.keep.alive";
+
+  /**
+   * Number of times a blocked finish polls for termination before blocking
+   * its thread (Integer property).
+   * <p>
+   * Spinning avoids parking and compensating for finishes that terminate
+   * shortly, at the expense of CPU time. Defaults to 0.
+   */
+  public static final String APGAS_FINISH_SPIN = "apgas.finish.spin";
+
+  /**
+   * Maximal number of nested finishes in which a blocked worker runs pending
+   * tasks of any finish before blocking (Integer property).
+   * <p>
+   * Bounds the stack depth of helping workers. Defaults to 0, in which case a
+   * blocked worker only runs the tasks of its own finish found at the top of
+   * its local queue.
+   * <p>
+   * A helping worker may run tasks of other finishes on top of the blocked
+   * task, which cannot resume until these tasks return. A program whose tasks
+   * wait for one another by other means than finish, e.g., a latch, a monitor,
+   * or polling a {@link apgas.util.GlobalRef}, may therefore deadlock if a
+   * helped task waits for something the blocked task only does after its
+   * finish returns. Only enable helping for programs that synchronize with
+   * finish alone.
+   */
+  public static final String APGAS_FINISH_HELP_DEPTH = "apgas.finish.help.depth";
+
+  /**
+   * Runs every task on its own virtual thread if set and supported by the JVM
+   * (Boolean property).
+   * <p>
+   * Requires Java 21 or later. The virtual threads are multiplexed over the
+   * carrier threads of the JVM-wide scheduler, not over
+   * {@link apgas.Configuration#APGAS_THREADS} threads. To bound the carrier
+   * threads, set the {@code jdk.virtualThreadScheduler.parallelism} system
+   * property on the command line; it is passed on to the places launched by
+   * the runtime.
+   * <p>
+   * A finish blocked on a virtual thread unmounts it instead of tying up a
+   * carrier thread. Constructs that wait on object monitors, e.g., resilient
+   * finishes, still pin the carrier thread on Java versions before 24.
+   */
+  public static final String APGAS_VIRTUAL_THREADS = "apgas.virtual.threads";
+
   /**
    * Reduces the number of threads used by Hazelcast if set (Boolean property).
    */
@@ -15,6 +15,7 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.locks.LockSupport;
 
 import apgas.SerializableJob;
 import apgas.util.GlobalID;
@@ -87,6 +88,11 @@ final class DefaultFinish implements Serializable, Finish {
    */
   private transient List<Throwable> exceptions;
 
+  /**
+   * The thread blocked on this finish if any.
+   */
+  private transient Thread waiter;
+
   /**
    * Constructs a finish instance.
    */
@@ -95,6 +101,16 @@ final class DefaultFinish implements Serializable, Finish {
     spawn(here);
   }
 
+  /**
+   * Constructs a remote finish instance with the given ID.
+   *
+   * @param id
+   *          the ID of the finish
+   */
+  private DefaultFinish(GlobalID id) {
+    this.id = id;
+  }
+
   @Override
   public synchronized void submit(int p) {
     final int here = GlobalRuntimeImpl.getRuntime().here;
@@ -172,7 +188,7 @@ final class DefaultFinish implements Serializable, Finish {
         }
       }
       if (--count == 0) {
-        notifyAll();
+        release();
       }
     } else {
       // remote finish
@@ -180,7 +196,7 @@ final class DefaultFinish implements Serializable, Finish {
       if (--count == 0) {
         final int _counts[] = counts;
         final DefaultFinish that = this;
-        GlobalRuntimeImpl.getRuntime().transport.send(id.home.id,
+        GlobalRuntimeImpl.getRuntime().transport.sendControl(id.home.id,
             () -> that.update(_counts));
         Arrays.fill(counts, 0);
       }
@@ -207,7 +223,7 @@ final class DefaultFinish implements Serializable, Finish {
       }
     }
     if (count == 0) {
-      notifyAll();
+      release();
     }
   }
 
@@ -242,14 +258,36 @@ final class DefaultFinish implements Serializable, Finish {
   }
 
   @Override
-  public synchronized boolean block() {
-    while (count != 0) {
-      try {
-        wait();
-      } catch (final InterruptedException e) {
+  public boolean block() {
+    // park ignores a pending interrupt, clear it and restore it once released
+    boolean interrupted = false;
+    while (true) {
+      synchronized (this) {
+        if (count == 0) {
+          break;
+        }
+        waiter = Thread.currentThread();
+      }
+      if (Thread.interrupted()) {
+        interrupted = true;
       }
+      // unlike waiting on the monitor, parking unmounts a virtual thread
+      LockSupport.park(this);
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    return true;
+  }
+
+  /**
+   * Wakes up the thread blocked on this finish if any.
+   */
+  private void release() {
+    if (waiter != null) {
+      LockSupport.unpark(waiter);
+      waiter = null;
     }
-    return count == 0;
   }
 
   /**
@@ -278,6 +316,23 @@ final class DefaultFinish implements Serializable, Finish {
     return this;
   }
 
+  /**
+   * Returns the finish object with the given {@link GlobalID} at this place.
+   * <p>
+   * Instantiates and registers a remote finish object if none exists yet.
+   *
+   * @param id
+   *          the ID of the finish
+   * @return the finish object
+   */
+  static DefaultFinish resolve(GlobalID id) {
+    final Object me = id.getHere();
+    if (me instanceof DefaultFinish) {
+      return (DefaultFinish) me;
+    }
+    return (DefaultFinish) new DefaultFinish(id).readResolve();
+  }
+
   /**
    * Deserializes the finish object.
    *
@@ -14,7 +14,8 @@ package apgas.impl;
 import java.io.IOException;
 import java.io.Serializable;
 import java.lang.management.ManagementFactory;
-import java.lang.reflect.Field;
+import java.lang.management.RuntimeMXBean;
+import java.lang.reflect.InvocationTargetException;
 import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
@@ -23,14 +24,16 @@ import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.RecursiveAction;
 import java.util.function.Consumer;
@@ -39,6 +42,7 @@ import com.hazelcast.core.IMap;
 
 import apgas.Configuration;
 import apgas.Constructs;
+import apgas.DeadPlaceException;
 import apgas.GlobalRuntime;
 import apgas.Job;
 import apgas.MultipleException;
@@ -52,7 +56,23 @@ import apgas.util.GlobalID;
  * {@link apgas.GlobalRuntime} class.
  */
 public final class GlobalRuntimeImpl extends GlobalRuntime {
+  /**
+   * The global runtime instance of the first place created in this JVM.
+   */
   private static GlobalRuntimeImpl runtime;
+
+  /**
+   * True if several places share this JVM.
+   */
+  static volatile boolean shared;
+
+  /**
+   * The global runtime instance a non-worker thread is acting for if not the
+   * default one.
+   */
+  private static final ThreadLocal<GlobalRuntimeImpl> current =
+      new ThreadLocal<>();
+
   /**
    * The value of the APGAS_VERBOSE_SERIALIZATION system property.
    */
@@ -63,6 +83,11 @@ public final class GlobalRuntimeImpl extends GlobalRuntime {
    */
   final boolean resilient;
 
+  /**
+   * The fan-out of broadcast trees.
+   */
+  private final int arity;
+
   /**
    * The finish factory.
    */
@@ -84,9 +109,9 @@ public final class GlobalRuntimeImpl extends GlobalRuntime {
   final Place home;
 
   /**
-   * The pool for this global runtime instance.
+   * The scheduler for this global runtime instance.
    */
-  final ForkJoinPool pool;
+  final Scheduler scheduler;
 
   /**
    * The mutable set of places in this global runtime instance.
@@ -123,13 +148,102 @@ public final class GlobalRuntimeImpl extends GlobalRuntime {
    */
   final IMap<GlobalID, ResilientFinishState> resilientFinishMap;
 
-  private static Worker currentWorker() {
+  /**
+   * The data attached to global IDs at this place, or null for the first place
+   * created in this JVM, which uses the static map of {@link GlobalID}.
+   * <p>
+   * Initialized before the constructor sets {@link #runtime}.
+   */
+  private final Map<GlobalID, Object> globalIDMap = runtime == null ? null
+      : new ConcurrentHashMap<>();
+
+  /**
+   * The serialization profiler of this place or null if profiling is disabled.
+   */
+  final SerializationProfiler profiler = SerializationProfiler.enabled
+      ? new SerializationProfiler(this) : null;
+
+  private Worker currentWorker() {
     final Thread t = Thread.currentThread();
-    return t instanceof Worker ? (Worker) t : null;
+    return t instanceof Worker && ((Worker) t).getPool() == scheduler.pool
+        ? (Worker) t : null;
+  }
+
+  /**
+   * Returns the finish of the current task.
+   *
+   * @param worker
+   *          the current worker or null if not a worker thread of this place
+   * @return the finish or {@link NullFinish#SINGLETON} if no current task
+   */
+  private Finish currentFinish(Worker worker) {
+    final Task task = worker != null ? worker.task
+        : scheduler.isVirtual() ? Worker.getTask() : null;
+    return task == null ? NullFinish.SINGLETON : task.finish;
+  }
+
+  /**
+   * Appends the options of this JVM that spawned places need to a command.
+   * <p>
+   * Passes on the boot class path if supported (Java 8), the module access
+   * options (Java 9 and later), and the settings of the virtual thread
+   * scheduler.
+   *
+   * @param command
+   *          the command
+   */
+  private static void addJvmOptions(List<String> command) {
+    final RuntimeMXBean bean = ManagementFactory.getRuntimeMXBean();
+    if (bean.isBootClassPathSupported()) {
+      command.add("-Xbootclasspath:" + bean.getBootClassPath());
+    }
+    for (final String argument : bean.getInputArguments()) {
+      if (argument.startsWith("--add-opens=")
+          || argument.startsWith("--add-exports=")
+          || argument.startsWith("-Djdk.virtualThreadScheduler.")) {
+        command.add(argument);
+      }
+    }
   }
 
+  /**
+   * Returns the global runtime instance of the current place.
+   * <p>
+   * If several places share this JVM, this is the place the current thread is
+   * acting for.
+   *
+   * @return the global runtime instance
+   */
   public static GlobalRuntimeImpl getRuntime() {
-    return runtime;
+    if (!shared) {
+      return runtime;
+    }
+    final Thread t = Thread.currentThread();
+    if (t instanceof Worker) {
+      return ((Worker) t).runtime;
+    }
+    final GlobalRuntimeImpl r = current.get();
+    return r == null ? runtime : r;
+  }
+
+  /**
+   * Makes the current thread act for the given place.
+   *
+   * @param r
+   *          the global runtime instance of the place
+   * @return the global runtime instance the thread was acting for
+   */
+  static GlobalRuntimeImpl setRuntime(GlobalRuntimeImpl r) {
+    final Thread t = Thread.currentThread();
+    if (t instanceof Worker) {
+      final Worker worker = (Worker) t;
+      final GlobalRuntimeImpl previous = worker.runtime;
+      worker.runtime = r;
+      return previous;
+    }
+    final GlobalRuntimeImpl previous = current.get();
+    current.set(r);
+    return previous == null ? runtime : previous;
   }
 
   /**
@@ -139,29 +253,48 @@ public final class GlobalRuntimeImpl extends GlobalRuntime {
    *          the command line arguments
    */
   public GlobalRuntimeImpl(String[] args) {
+    this(args, System.getProperty(Configuration.APGAS_MASTER));
+  }
+
+  /**
+   * Constructs a new {@link GlobalRuntimeImpl} instance.
+   *
+   * @param args
+   *          the command line arguments
+   * @param master
+   *          member to connect to or null for the first place
+   */
+  private GlobalRuntimeImpl(String[] args, String master) {
     try {
-      GlobalRuntimeImpl.runtime = this;
+      if (GlobalRuntimeImpl.runtime == null) {
+        GlobalRuntimeImpl.runtime = this;
+      }
 
       // parse configuration
       final int p = Integer.getInteger(Configuration.APGAS_PLACES, 1);
       final int threads = Integer.getInteger(Configuration.APGAS_THREADS,
           Runtime.getRuntime().availableProcessors());
-      final String master = System.getProperty(Configuration.APGAS_MASTER);
       final String hostfile = System.getProperty(Configuration.APGAS_HOSTFILE);
       verboseSerialization = Boolean
           .getBoolean(Configuration.APGAS_VERBOSE_SERIALIZATION);
       final boolean verboseLauncher = Boolean
           .getBoolean(Configuration.APGAS_VERBOSE_LAUNCHER);
       resilient = Boolean.getBoolean(Configuration.APGAS_RESILIENT);
+      arity = Math.max(2, Integer.getInteger(Config.APGAS_BROADCAST_ARITY, 8));
 
       final boolean compact = Boolean.getBoolean(Config.APGAS_COMPACT);
-      final int maxThreads = Integer.getInteger(Config.APGAS_MAX_THREADS, 256);
       final String serialization = System
           .getProperty(Config.APGAS_SERIALIZATION, "kryo");
       final String finishName = System.getProperty(Config.APGAS_FINISH);
       final String java = System.getProperty(Config.APGAS_JAVA, "java");
       final String transportName = System.getProperty(Config.APGAS_TRANSPORT);
       final String launcherName = System.getProperty(Config.APGAS_LAUNCHER);
+      final boolean local = LocalTransport.class.getName()
+          .equals(transportName);
+      if (local && resilient) {
+        throw new IllegalArgumentException("Transport " + transportName
+            + " does not support " + Configuration.APGAS_RESILIENT + "=true");
+      }
 
       final String localhost = InetAddress.getLoopbackAddress()
           .getHostAddress();
@@ -184,7 +317,7 @@ public final class GlobalRuntimeImpl extends GlobalRuntime {
 
       // initialize launcher
       Launcher launcher = null;
-      if (master == null && p > 1) {
+      if (master == null && p > 1 && !local) {
         if (launcherName != null) {
           try {
             launcher = (Launcher) Class.forName(launcherName).newInstance();
@@ -206,8 +339,7 @@ public final class GlobalRuntimeImpl extends GlobalRuntime {
         final ArrayList<String> command = new ArrayList<>();
         command.add(java);
         command.add("-Duser.dir=" + System.getProperty("user.dir"));
-        command.add("-Xbootclasspath:"
-            + ManagementFactory.getRuntimeMXBean().getBootClassPath());
+        addJvmOptions(command);
         command.add("-cp");
         command.add(System.getProperty("java.class.path"));
         for (final String property : System.getProperties()
@@ -250,11 +382,7 @@ public final class GlobalRuntimeImpl extends GlobalRuntime {
       }
 
       // initialize scheduler
-      pool = new ForkJoinPool(maxThreads, new WorkerFactory(), null, false);
-      final Field ctl = ForkJoinPool.class.getDeclaredField("ctl");
-      ctl.setAccessible(true);
-      ctl.setLong(pool,
-          ctl.getLong(pool) + (((long) maxThreads - threads) << 48));
+      scheduler = new Scheduler(this, threads);
 
       // serialization
       final Boolean kryo = !"java".equals(serialization);
@@ -324,11 +452,12 @@ public final class GlobalRuntimeImpl extends GlobalRuntime {
         try {
           transport = (Transport) Class.forName(transportName)
               .getDeclaredConstructor(GlobalRuntimeImpl.class, String.class,
-                  String.class, boolean.class)
-              .newInstance(this, master, ip, compact);
+                  String.class, boolean.class, boolean.class)
+              .newInstance(this, master, ip, compact, kryo);
         } catch (InstantiationException | IllegalAccessException
             | ExceptionInInitializerError | ClassNotFoundException
-            | NoClassDefFoundError | ClassCastException e) {
+            | NoClassDefFoundError | ClassCastException
+            | NoSuchMethodException | InvocationTargetException e) {
           System.err.println("[APGAS] Unable to instantiate transport: "
               + transportName + ". Using default transport.");
         }
@@ -374,13 +503,16 @@ public final class GlobalRuntimeImpl extends GlobalRuntime {
       transport.start();
 
       // launch additional places
-      if (master == null && p > 1) {
+      if (master == null && p > 1 && local) {
+        for (int i = 1; i < p; i++) {
+          new GlobalRuntimeImpl(null, transport.getAddress());
+        }
+      } else if (master == null && p > 1) {
         try {
           final ArrayList<String> command = new ArrayList<>();
           command.add(java);
           command.add("-Duser.dir=" + System.getProperty("user.dir"));
-          command.add("-Xbootclasspath:"
-              + ManagementFactory.getRuntimeMXBean().getBootClassPath());
+          addJvmOptions(command);
           command.add("-cp");
           command.add(System.getProperty("java.class.path"));
           for (final String property : System.getProperties()
@@ -402,7 +534,8 @@ public final class GlobalRuntimeImpl extends GlobalRuntime {
       }
 
       // wait for enough places to join the global runtime
-      while (maxPlace() < p) {
+      // in-JVM places are created in sequence by the first place
+      while ((master == null || !local) && maxPlace() < p) {
         try {
           Thread.sleep(100);
         } catch (final InterruptedException e) {
@@ -436,6 +569,13 @@ public final class GlobalRuntimeImpl extends GlobalRuntime {
       }
       places = Collections.<Place> unmodifiableList(new ArrayList<>(placeSet));
     }
+    if (here == 0 && transport != null && transport.kryo) {
+      for (final int id : added) {
+        if (id != 0) {
+          ClassRegistry.update(this, new Place(id));
+        }
+      }
+    }
     if (removed.isEmpty()) {
       return;
     }
@@ -449,8 +589,7 @@ public final class GlobalRuntimeImpl extends GlobalRuntime {
 
       @Override
       public void compute() {
-        final Worker worker = (Worker) Thread.currentThread();
-        worker.task = null; // a handler is not a task (yet)
+        Worker.setTask(null); // a handler is not a task (yet)
         for (final int id : removed) {
           ResilientFinishState.purge(id);
         }
@@ -479,7 +618,7 @@ public final class GlobalRuntimeImpl extends GlobalRuntime {
     if (launcher != null) {
       launcher.shutdown();
     }
-    pool.shutdown();
+    scheduler.shutdown();
     transport.shutdown();
   }
 
@@ -498,8 +637,7 @@ public final class GlobalRuntimeImpl extends GlobalRuntime {
    */
   public void finish(Job f) {
     final Worker worker = currentWorker();
-    final Finish finish = factory.make(worker == null || worker.task == null
-        ? NullFinish.SINGLETON : worker.task.finish);
+    final Finish finish = factory.make(currentFinish(worker));
     new Task(finish, f, here).finish(worker);
     final List<Throwable> exceptions = finish.exceptions();
     if (exceptions != null) {
@@ -536,8 +674,7 @@ public final class GlobalRuntimeImpl extends GlobalRuntime {
    */
   public void async(Job f) {
     final Worker worker = currentWorker();
-    final Finish finish = worker == null || worker.task == null
-        ? NullFinish.SINGLETON : worker.task.finish;
+    final Finish finish = currentFinish(worker);
     finish.spawn(here);
     new Task(finish, f, here).async(worker);
   }
@@ -552,9 +689,7 @@ public final class GlobalRuntimeImpl extends GlobalRuntime {
    *          the function to run
    */
   public void asyncAt(Place p, SerializableJob f) {
-    final Worker worker = currentWorker();
-    final Finish finish = worker == null || worker.task == null
-        ? NullFinish.SINGLETON : worker.task.finish;
+    final Finish finish = currentFinish(currentWorker());
     finish.spawn(p.id);
     new Task(finish, f, here).asyncAt(p.id);
   }
@@ -571,7 +706,23 @@ public final class GlobalRuntimeImpl extends GlobalRuntime {
    *          the function to run
    */
   public void uncountedAsyncAt(Place p, SerializableJob f) {
-    new UncountedTask(f).uncountedAsyncAt(p.id);
+    new UncountedTask(f).uncountedAsyncAt(p.id, false);
+  }
+
+  /**
+   * Submits an uncounted control task to the global runtime to be run at
+   * {@link Place} {@code p} with body {@code f} and returns immediately.
+   * <p>
+   * Same as {@link #uncountedAsyncAt(Place, SerializableJob)} except that the
+   * task is not delayed by bulk transfers to the same place.
+   *
+   * @param p
+   *          the place of execution
+   * @param f
+   *          the function to run
+   */
+  public void controlAsyncAt(Place p, SerializableJob f) {
+    new UncountedTask(f).uncountedAsyncAt(p.id, true);
   }
 
   /**
@@ -584,7 +735,7 @@ public final class GlobalRuntimeImpl extends GlobalRuntime {
    *          the function to run
    */
   public void immediateAsyncAt(Place p, SerializableRunnable f) {
-    transport.send(p.id, f);
+    transport.sendControl(p.id, f);
   }
 
   /**
@@ -625,6 +776,122 @@ public final class GlobalRuntimeImpl extends GlobalRuntime {
     return (T) id.removeHere();
   }
 
+  /**
+   * Submits a task to run {@code f} at each place in {@code places} and returns
+   * immediately. The tasks are tracked by the enclosing finish.
+   * <p>
+   * {@code f} is serialized once. The copies are forwarded along a spanning
+   * tree of the places with fan-out {@link Config#APGAS_BROADCAST_ARITY}, so
+   * that no place sends more than this many messages. Each remote place runs
+   * its own deserialized copy of {@code f}. If the current place belongs to
+   * {@code places}, it runs {@code f} itself like {@code asyncAt(here(), f)}
+   * does.
+   * <p>
+   * Dead places are skipped and the resulting
+   * {@link apgas.DeadPlaceException} instances are reported to the enclosing
+   * finish. If a subtree root is known to be dead when the copy is sent, its
+   * parent serves its subtree. A place that dies after receiving its copy
+   * would take its subtree with it, hence in resilient mode the current place
+   * sends a copy to each place directly.
+   *
+   * @param places
+   *          the places of execution
+   * @param f
+   *          the function to run
+   */
+  public void asyncAtAll(Collection<? extends Place> places,
+      SerializableJob f) {
+    int[] ids = new int[places.size()];
+    int i = 0;
+    boolean local = false;
+    for (final Place p : places) {
+      if (p.id == here) {
+        local = true;
+      } else {
+        ids[i++] = p.id;
+      }
+    }
+    if (i > 0) {
+      if (i < ids.length) {
+        ids = Arrays.copyOf(ids, i);
+      }
+      forward(ids, 0, transport.serialize(f),
+          resilient ? ids.length : arity);
+    }
+    if (local) {
+      asyncAt(home, f);
+    }
+  }
+
+  /**
+   * Runs {@code f} at each place in {@code places} and waits for all the tasks
+   * transitively spawned by these runs.
+   * <p>
+   * Equivalent to {@code finish(() -> asyncAtAll(places, f))}.
+   *
+   * @param places
+   *          the places of execution
+   * @param f
+   *          the function to run
+   * @throws MultipleException
+   *           if there are uncaught exceptions
+   */
+  public void broadcast(Collection<? extends Place> places,
+      SerializableJob f) {
+    finish(() -> asyncAtAll(places, f));
+  }
+
+  /**
+   * Forwards a broadcast to a range of places.
+   * <p>
+   * Splits {@code ids[from..]} into at most {@code arity} subtrees and spawns
+   * the broadcast at the root of each subtree.
+   *
+   * @param ids
+   *          the place IDs
+   * @param from
+   *          the index of the first place to forward to
+   * @param bytes
+   *          the serialized function
+   * @param arity
+   *          the fan-out of the tree
+   */
+  private static void forward(int[] ids, int from, byte[] bytes, int arity) {
+    final int chunk = (ids.length - from + arity - 1) / arity;
+    for (int i = from; i < ids.length; i += chunk) {
+      final int[] subtree = Arrays.copyOfRange(ids, i,
+          Math.min(i + chunk, ids.length));
+      try {
+        Constructs.asyncAt(new Place(subtree[0]),
+            () -> spread(subtree, bytes, arity));
+      } catch (final DeadPlaceException e) {
+        Constructs.async(() -> {
+          throw e;
+        });
+        forward(subtree, 1, bytes, arity);
+      }
+    }
+  }
+
+  /**
+   * Runs a broadcast at the current place, i.e., at {@code ids[0]}, after
+   * forwarding it to {@code ids[1..]}.
+   *
+   * @param ids
+   *          the place IDs of the subtree rooted at the current place
+   * @param bytes
+   *          the serialized function
+   * @param arity
+   *          the fan-out of the tree
+   * @throws Exception
+   *           if the function throws an exception
+   */
+  private static void spread(int[] ids, byte[] bytes, int arity)
+      throws Exception {
+    forward(ids, 1, bytes, arity);
+    ((SerializableJob) getRuntime().transport.deserialize(bytes)).run();
+  }
+
   /**
    * Returns the current {@link Place}.
    *
@@ -663,9 +930,28 @@ public final class GlobalRuntimeImpl extends GlobalRuntime {
     return transport.maxPlace();
   }
 
+  /**
+   * Returns the transport of this place.
+   *
+   * @return the transport
+   */
+  public Transport getTransport() {
+    return transport;
+  }
+
+  /**
+   * Returns the map holding the data attached to global IDs at this place.
+   *
+   * @return the map, or null if this place is the first place created in this
+   *         JVM and uses the static map of {@link GlobalID}
+   */
+  public Map<GlobalID, Object> getGlobalIDMap() {
+    return globalIDMap;
+  }
+
   @Override
   public ExecutorService getExecutorService() {
-    return pool;
+    return scheduler.pool;
   }
 
   /**
@@ -676,7 +962,7 @@ public final class GlobalRuntimeImpl extends GlobalRuntime {
    *          the task
    */
   void execute(ForkJoinTask<?> task) {
-    pool.execute(task);
+    scheduler.execute(task);
   }
 
   @Override
@@ -1,19 +1,21 @@
 package apgas.impl;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 
 import org.objenesis.strategy.SerializingInstantiatorStrategy;
 
 import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
 import com.esotericsoftware.kryo.Serializer;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 import com.esotericsoftware.kryo.io.UnsafeInput;
 import com.esotericsoftware.kryo.io.UnsafeOutput;
-import com.esotericsoftware.kryo.serializers.ClosureSerializer;
+import com.esotericsoftware.kryo.util.MapReferenceResolver;
 import com.hazelcast.nio.ObjectDataInput;
 import com.hazelcast.nio.ObjectDataOutput;
 import com.hazelcast.nio.serialization.StreamSerializer;
@@ -27,36 +29,40 @@ import apgas.util.PlaceLocalObject;
  *
  */
 class KryoSerializer implements StreamSerializer<Object> {
-  private static final ThreadLocal<Kryo> kryoThreadLocal = new ThreadLocal<Kryo>() {
+  static final ThreadLocal<Kryo> kryoThreadLocal = new ThreadLocal<Kryo>() {
     @Override
     protected Kryo initialValue() {
-      final Kryo kryo = new Kryo() {
+      final Kryo kryo = new Kryo(new ClassRegistry.Resolver(),
+          new MapReferenceResolver()) {
         @Override
         @SuppressWarnings({ "rawtypes", "unchecked" })
         protected Serializer newDefaultSerializer(Class type) {
           try {
-            type.getMethod("writeReplace");
-            return new CustomSerializer();
-          } catch (final NoSuchMethodException e) {
+            return new CustomSerializer(type.getMethod("writeReplace"));
+          } catch (final NoSuchMethodException | IllegalAccessException e) {
           }
           return super.newDefaultSerializer(type);
         }
       };
       kryo.addDefaultSerializer(DefaultFinish.class,
           new DefaultFinishSerializer());
+      kryo.addDefaultSerializer(PlaceLocalObject.class,
+          new PlaceLocalObjectSerializer());
       kryo.setInstantiatorStrategy(new SerializingInstantiatorStrategy());
       kryo.register(Task.class);
       kryo.register(UncountedTask.class);
       kryo.register(Place.class);
       kryo.register(GlobalID.class);
       kryo.register(java.lang.invoke.SerializedLambda.class);
+      kryo.register(ClassRegistry.class);
       try {
         kryo.register(Class.forName(Kryo.class.getName() + "$Closure"),
-            new ClosureSerializer());
+            new Lambdas.LambdaSerializer());
         kryo.register(Class
             .forName(PlaceLocalObject.class.getName() + "$ObjectReference"));
       } catch (final ClassNotFoundException e) {
       }
+      ClassRegistry.preregister(kryo);
       return kryo;
     }
   };
@@ -66,48 +72,172 @@ class KryoSerializer implements StreamSerializer<Object> {
     return 42;
   }
 
+  /**
+   * The initial capacity of the per-thread buffers.
+   */
+  private static final int BUFFER_SIZE = 4096;
+
+  /**
+   * The capacity above which a per-thread buffer is not retained after use.
+   */
+  private static final int MAX_RETAINED_SIZE = 1 << 20;
+
+  /**
+   * The per-thread output buffer.
+   */
+  private static final ThreadLocal<Output> outputThreadLocal = ThreadLocal
+      .withInitial(() -> new UnsafeOutput(BUFFER_SIZE, -1));
+
+  /**
+   * The per-thread input buffer.
+   */
+  private static final ThreadLocal<Input> inputThreadLocal = ThreadLocal
+      .withInitial(() -> new UnsafeInput(BUFFER_SIZE));
+
+  /**
+   * Serializes the object into the output buffer of the current thread and
+   * writes it as a length-prefixed block.
+   * <p>
+   * Falls back to a fresh buffer if the buffer of the current thread is in use.
+   */
   @Override
   public void write(ObjectDataOutput objectDataOutput, Object object)
       throws IOException {
-    final Output output = new UnsafeOutput((OutputStream) objectDataOutput);
-    final Kryo kryo = kryoThreadLocal.get();
-    kryo.writeClassAndObject(output, object);
-    output.flush();
+    final Output pooled = outputThreadLocal.get();
+    final Output output = pooled.position() == 0 ? pooled
+        : new UnsafeOutput(BUFFER_SIZE, -1);
+    try {
+      kryoThreadLocal.get().writeClassAndObject(output, object);
+      objectDataOutput.writeInt(output.position());
+      objectDataOutput.write(output.getBuffer(), 0, output.position());
+    } finally {
+      output.clear();
+      if (output == pooled && output.getBuffer().length > MAX_RETAINED_SIZE) {
+        outputThreadLocal.remove();
+      }
+    }
   }
 
+  /**
+   * Reads a length-prefixed block into the input buffer of the current thread
+   * with a single bulk read and deserializes the object from it.
+   * <p>
+   * Falls back to a fresh buffer if the buffer of the current thread is in use.
+   */
   @Override
   public Object read(ObjectDataInput objectDataInput) throws IOException {
-    final Input input = new UnsafeInput((InputStream) objectDataInput);
-    final Kryo kryo = kryoThreadLocal.get();
-    return kryo.readClassAndObject(input);
+    final int length = objectDataInput.readInt();
+    final Input pooled = inputThreadLocal.get();
+    final Input input = pooled.limit() == 0 ? pooled : new UnsafeInput();
+    byte[] bytes = input.getBuffer();
+    if (bytes == null || bytes.length < length) {
+      bytes = new byte[Math.max(length, BUFFER_SIZE)];
+    }
+    objectDataInput.readFully(bytes, 0, length);
+    input.setBuffer(bytes, 0, length);
+    try {
+      return kryoThreadLocal.get().readClassAndObject(input);
+    } finally {
+      if (input == pooled) {
+        input.setBuffer(bytes.length > MAX_RETAINED_SIZE
+            ? new byte[BUFFER_SIZE] : bytes, 0, 0);
+      }
+    }
   }
 
   @Override
   public void destroy() {
   }
 
+  /**
+   * A serializer for the classes with a public {@code writeReplace} method.
+   * <p>
+   * The {@code writeReplace} method is resolved once when the serializer is
+   * created. The {@code readResolve} methods are resolved once per class.
+   */
   private static class CustomSerializer extends Serializer<Object> {
+    /**
+     * Marks the classes with no {@code readResolve} method.
+     */
+    private static final MethodHandle NONE = MethodHandles
+        .identity(Object.class);
+
+    /**
+     * The {@code readResolve} methods indexed by class.
+     */
+    private static final ClassValue<MethodHandle> readResolve = new ClassValue<MethodHandle>() {
+      @Override
+      protected MethodHandle computeValue(Class<?> type) {
+        try {
+          final Method method = type.getDeclaredMethod("readResolve");
+          method.setAccessible(true);
+          return MethodHandles.lookup().unreflect(method)
+              .asType(MethodType.methodType(Object.class, Object.class));
+        } catch (final Exception e) {
+          return NONE;
+        }
+      }
+    };
+
+    /**
+     * The {@code writeReplace} method of the serialized class.
+     */
+    private final MethodHandle writeReplace;
+
+    CustomSerializer(Method writeReplace) throws IllegalAccessException {
+      writeReplace.setAccessible(true);
+      this.writeReplace = MethodHandles.lookup().unreflect(writeReplace)
+          .asType(MethodType.methodType(Object.class, Object.class));
+    }
+
     @Override
     public void write(Kryo kryo, Output output, Object object) {
       try {
-        final Method writeReplace = object.getClass().getMethod("writeReplace");
-        object = writeReplace.invoke(object);
-      } catch (final Exception e) {
+        object = (Object) writeReplace.invokeExact(object);
+      } catch (final Throwable e) {
+        throw new KryoException(e);
       }
       kryo.writeClassAndObject(output, object);
     }
 
     @Override
     public Object read(Kryo kryo, Input input, Class<Object> type) {
-      Object object = kryo.readClassAndObject(input);
+      final Object object = kryo.readClassAndObject(input);
+      if (object == null) {
+        return null;
+      }
+      final MethodHandle handle = readResolve.get(object.getClass());
+      if (handle == NONE) {
+        return object;
+      }
       try {
-        final Method readResolve = object.getClass()
-            .getDeclaredMethod("readResolve");
-        readResolve.setAccessible(true);
-        object = readResolve.invoke(object);
-      } catch (final Exception e) {
+        return (Object) handle.invokeExact(object);
+      } catch (final Throwable e) {
+        throw new KryoException(e);
       }
-      return object;
+    }
+  }
+
+  /**
+   * A serializer for {@link PlaceLocalObject} instances.
+   * <p>
+   * Writes the {@link GlobalID} of the object and resolves it to the object
+   * local to the destination place, like
+   * {@link PlaceLocalObject#writeReplace()} but without an intermediate object
+   * reference.
+   */
+  private static class PlaceLocalObjectSerializer
+      extends Serializer<PlaceLocalObject> {
+    @Override
+    public void write(Kryo kryo, Output output, PlaceLocalObject object) {
+      kryo.writeObject(output, PlaceLocalObject.getId(object));
+    }
+
+    @Override
+    public PlaceLocalObject read(Kryo kryo, Input input,
+        Class<PlaceLocalObject> type) {
+      return (PlaceLocalObject) kryo.readObject(input, GlobalID.class)
+          .getHere();
     }
   }
 
@@ -122,9 +252,7 @@ class KryoSerializer implements StreamSerializer<Object> {
     @Override
     public DefaultFinish read(Kryo kryo, Input input,
         Class<DefaultFinish> type) {
-      final DefaultFinish f = kryo.newInstance(type);
-      f.id = kryo.readObject(input, GlobalID.class);
-      return (DefaultFinish) f.readResolve();
+      return DefaultFinish.resolve(kryo.readObject(input, GlobalID.class));
     }
   }
 }
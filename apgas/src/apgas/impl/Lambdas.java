@@ -0,0 +1,325 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package apgas.impl;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.SerializedLambda;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+/**
+ * The {@link Lambdas} class implements the serialization of lambdas without
+ * reflection on the receiving side.
+ * <p>
+ * A serializable lambda is written as its capturing class, a descriptor of its
+ * implementation method and functional interface, and its captured arguments.
+ * The first time a place receives a descriptor, it instantiates the lambda
+ * with {@link SerializedLambda} and caches a handle to the constructor of the
+ * resulting lambda class. Later instances are constructed directly from their
+ * captured arguments.
+ */
+final class Lambdas {
+  /**
+   * The handle to the {@code readResolve} method of {@link SerializedLambda}.
+   */
+  private static final Method readResolve;
+
+  static {
+    try {
+      readResolve = SerializedLambda.class.getDeclaredMethod("readResolve");
+      readResolve.setAccessible(true);
+    } catch (final NoSuchMethodException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  /**
+   * Marks descriptors that cannot be instantiated without
+   * {@link SerializedLambda}.
+   */
+  private static final MethodHandle NONE = MethodHandles.constant(Object.class,
+      null);
+
+  /**
+   * The factories indexed by capturing class and descriptor.
+   */
+  private static final ClassValue<Map<String, MethodHandle>> factories = new ClassValue<Map<String, MethodHandle>>() {
+    @Override
+    protected Map<String, MethodHandle> computeValue(Class<?> type) {
+      return new ConcurrentHashMap<>();
+    }
+  };
+
+  /**
+   * The writers indexed by lambda class.
+   */
+  private static final ClassValue<Writer> writers = new ClassValue<Writer>() {
+    @Override
+    protected Writer computeValue(Class<?> type) {
+      return new Writer(type);
+    }
+  };
+
+  /**
+   * Prevents instantiation.
+   */
+  private Lambdas() {
+  }
+
+  /**
+   * Returns the descriptor of a serialized lambda.
+   *
+   * @param lambda
+   *          the serialized lambda
+   * @return the descriptor
+   */
+  static String descriptor(SerializedLambda lambda) {
+    return lambda.getFunctionalInterfaceClass() + " "
+        + lambda.getFunctionalInterfaceMethodName() + " "
+        + lambda.getFunctionalInterfaceMethodSignature() + " "
+        + lambda.getImplMethodKind() + " " + lambda.getImplClass() + " "
+        + lambda.getImplMethodName() + " " + lambda.getImplMethodSignature()
+        + " " + lambda.getInstantiatedMethodType();
+  }
+
+  /**
+   * Returns the captured arguments of a serialized lambda.
+   */
+  private static Object[] args(SerializedLambda lambda) {
+    final Object[] args = new Object[lambda.getCapturedArgCount()];
+    for (int i = 0; i < args.length; i++) {
+      args[i] = lambda.getCapturedArg(i);
+    }
+    return args;
+  }
+
+  /**
+   * Instantiates a lambda.
+   *
+   * @param capturingClass
+   *          the capturing class
+   * @param descriptor
+   *          the descriptor of the lambda
+   * @param args
+   *          the captured arguments
+   * @return the lambda
+   * @throws Exception
+   *           if the lambda cannot be instantiated
+   */
+  static Object resolve(Class<?> capturingClass, String descriptor,
+      Object[] args) throws Exception {
+    final Map<String, MethodHandle> map = factories.get(capturingClass);
+    final MethodHandle factory = map.get(descriptor);
+    if (factory != null && factory != NONE) {
+      try {
+        return factory.invokeExact(args);
+      } catch (final Exception | Error e) {
+        throw e;
+      } catch (final Throwable e) {
+        throw new RuntimeException(e);
+      }
+    }
+    final String[] parts = descriptor.split(" ");
+    final Object lambda = readResolve.invoke(
+        new SerializedLambda(capturingClass, parts[0], parts[1], parts[2],
+            Integer.parseInt(parts[3]), parts[4], parts[5], parts[6],
+            parts[7], args));
+    if (factory == null) {
+      map.put(descriptor, factory(lambda.getClass(), args.length));
+    }
+    return lambda;
+  }
+
+  /**
+   * Returns a handle to the constructor of a lambda class taking the captured
+   * arguments as an array or {@link #NONE} if not found.
+   */
+  private static MethodHandle factory(Class<?> type, int count) {
+    try {
+      for (final Constructor<?> constructor : type
+          .getDeclaredConstructors()) {
+        if (constructor.getParameterCount() == count) {
+          constructor.setAccessible(true);
+          return MethodHandles.lookup().unreflectConstructor(constructor)
+              .asSpreader(Object[].class, count)
+              .asType(MethodType.methodType(Object.class, Object[].class));
+        }
+      }
+    } catch (final Exception e) {
+    }
+    return NONE;
+  }
+
+  /**
+   * Returns an object output stream that writes lambdas in the format of
+   * {@link Lambdas}.
+   *
+   * @param out
+   *          the underlying stream
+   * @return the object output stream
+   * @throws IOException
+   *           if an I/O error occurs
+   */
+  static ObjectOutputStream newObjectOutputStream(OutputStream out)
+      throws IOException {
+    return new ObjectOutputStream(out) {
+      {
+        enableReplaceObject(true);
+      }
+
+      @Override
+      protected Object replaceObject(Object object) throws IOException {
+        if (object instanceof SerializedLambda) {
+          final SerializedLambda lambda = (SerializedLambda) object;
+          return new Replacement(lambda.getCapturingClass(),
+              descriptor(lambda), args(lambda));
+        }
+        return object;
+      }
+    };
+  }
+
+  /**
+   * The serialized form of a lambda for java serialization.
+   */
+  private static class Replacement implements Serializable {
+    private static final long serialVersionUID = 3496211379416207911L;
+
+    private final String capturingClass;
+    private final String descriptor;
+    private final Object[] args;
+
+    Replacement(String capturingClass, String descriptor, Object[] args) {
+      this.capturingClass = capturingClass;
+      this.descriptor = descriptor;
+      this.args = args;
+    }
+
+    private Object readResolve() throws ObjectStreamException {
+      try {
+        final ClassLoader loader = Thread.currentThread()
+            .getContextClassLoader();
+        return resolve(
+            Class.forName(capturingClass.replace('/', '.'), false,
+                loader == null ? Lambdas.class.getClassLoader() : loader),
+            descriptor, args);
+      } catch (final Exception e) {
+        final ObjectStreamException ose = new java.io.InvalidObjectException(
+            "Unable to instantiate lambda " + descriptor);
+        ose.initCause(e);
+        throw ose;
+      }
+    }
+  }
+
+  /**
+   * The per-lambda-class state of the writing side.
+   */
+  private static class Writer {
+    /**
+     * The handle to the {@code writeReplace} method of the lambda class.
+     */
+    final MethodHandle writeReplace;
+
+    /**
+     * The capturing class of the lambda class once computed.
+     */
+    volatile Class<?> capturingClass;
+
+    /**
+     * The descriptor of the lambda class once computed.
+     */
+    volatile String descriptor;
+
+    Writer(Class<?> type) {
+      try {
+        final Method method = type.getDeclaredMethod("writeReplace");
+        method.setAccessible(true);
+        writeReplace = MethodHandles.lookup().unreflect(method)
+            .asType(MethodType.methodType(Object.class, Object.class));
+      } catch (final ReflectiveOperationException e) {
+        throw new KryoException("Not a serializable lambda: " + type, e);
+      }
+    }
+  }
+
+  /**
+   * The Kryo serializer for lambdas.
+   */
+  static class LambdaSerializer extends Serializer<Object> {
+    @Override
+    public void write(Kryo kryo, Output output, Object object) {
+      final Writer writer = writers.get(object.getClass());
+      final SerializedLambda lambda;
+      try {
+        lambda = (SerializedLambda) (Object) writer.writeReplace
+            .invokeExact(object);
+      } catch (final Throwable e) {
+        throw new KryoException("Unable to serialize lambda", e);
+      }
+      if (writer.descriptor == null) {
+        writer.capturingClass = capturingClass(kryo, lambda);
+        writer.descriptor = descriptor(lambda);
+      }
+      kryo.writeClass(output, writer.capturingClass);
+      output.writeString(writer.descriptor);
+      final int count = lambda.getCapturedArgCount();
+      output.writeVarInt(count, true);
+      for (int i = 0; i < count; i++) {
+        kryo.writeClassAndObject(output, lambda.getCapturedArg(i));
+      }
+    }
+
+    @Override
+    public Object read(Kryo kryo, Input input, Class<Object> type) {
+      final Class<?> capturingClass = kryo.readClass(input).getType();
+      final String descriptor = input.readString();
+      final Object[] args = new Object[input.readVarInt(true)];
+      for (int i = 0; i < args.length; i++) {
+        args[i] = kryo.readClassAndObject(input);
+      }
+      try {
+        return resolve(capturingClass, descriptor, args);
+      } catch (final Exception e) {
+        throw new KryoException("Unable to instantiate lambda " + descriptor,
+            e);
+      }
+    }
+
+    /**
+     * Returns the capturing class of a serialized lambda.
+     */
+    private static Class<?> capturingClass(Kryo kryo, SerializedLambda lambda) {
+      try {
+        return Class.forName(lambda.getCapturingClass().replace('/', '.'),
+            false, kryo.getClassLoader());
+      } catch (final ClassNotFoundException e) {
+        throw new KryoException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,234 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package apgas.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import apgas.DeadPlaceException;
+import apgas.Place;
+
+/**
+ * The {@link LocalTransport} class implements active messages between places
+ * running inside the same JVM.
+ * <p>
+ * Each place has its own global runtime instance, pool, and
+ * {@link apgas.util.GlobalID} namespace. Messages are still serialized, so
+ * that places do not share mutable state, but they are deserialized and run by
+ * the sending thread on behalf of the destination place. No Hazelcast cluster
+ * is formed, hence resilient mode is not supported.
+ * <p>
+ * Selecting this transport makes the first place spawn the additional places
+ * in-process instead of launching new JVMs.
+ */
+public class LocalTransport extends Transport {
+  /**
+   * The global runtime instances indexed by place ID, null for dead places.
+   */
+  private static volatile GlobalRuntimeImpl[] runtimes =
+      new GlobalRuntimeImpl[0];
+
+  /**
+   * The serialization buffer of the current thread.
+   */
+  private static final ThreadLocal<Output> output = new ThreadLocal<Output>() {
+    @Override
+    protected Output initialValue() {
+      return new Output(4096, -1);
+    }
+  };
+
+  /**
+   * The global runtime instance.
+   */
+  private final GlobalRuntimeImpl runtime;
+
+  /**
+   * The place ID of this global runtime instance.
+   */
+  private final int here;
+
+  /**
+   * Initializes the {@link LocalTransport} for this global runtime instance.
+   *
+   * @param runtime
+   *          the global runtime instance
+   * @param master
+   *          ignored
+   * @param localhost
+   *          ignored
+   * @param compact
+   *          ignored
+   * @param kryo
+   *          use kryo serialization if set
+   */
+  public LocalTransport(GlobalRuntimeImpl runtime, String master,
+      String localhost, boolean compact, boolean kryo) {
+    super(runtime, kryo);
+    this.runtime = runtime;
+    GlobalRuntimeImpl.shared = true;
+    synchronized (LocalTransport.class) {
+      here = runtimes.length;
+      runtimes = Arrays.copyOf(runtimes, here + 1);
+    }
+  }
+
+  @Override
+  protected void start() {
+    final List<Integer> live = new ArrayList<>();
+    final GlobalRuntimeImpl[] runtimes;
+    synchronized (LocalTransport.class) {
+      runtimes = LocalTransport.runtimes.clone();
+      runtimes[here] = runtime;
+      LocalTransport.runtimes = runtimes;
+    }
+    for (int id = 0; id < runtimes.length; id++) {
+      if (runtimes[id] != null) {
+        live.add(id);
+      }
+    }
+    runtime.updatePlaces(live, Collections.<Integer> emptyList());
+    for (int id = 0; id < runtimes.length; id++) {
+      if (id != here && runtimes[id] != null) {
+        runtimes[id].updatePlaces(Collections.singletonList(here),
+            Collections.<Integer> emptyList());
+      }
+    }
+  }
+
+  @Override
+  protected void shutdown() {
+    final GlobalRuntimeImpl[] runtimes;
+    synchronized (LocalTransport.class) {
+      if (here >= LocalTransport.runtimes.length
+          || LocalTransport.runtimes[here] == null) {
+        return;
+      }
+      runtimes = LocalTransport.runtimes.clone();
+      runtimes[here] = null;
+      LocalTransport.runtimes = runtimes;
+    }
+    for (final GlobalRuntimeImpl runtime : runtimes) {
+      if (runtime != null) {
+        runtime.failureTime = System.nanoTime();
+        runtime.updatePlaces(Collections.<Integer> emptyList(),
+            Collections.singletonList(here));
+      }
+    }
+  }
+
+  @Override
+  protected String getAddress() {
+    return "local:" + here;
+  }
+
+  @Override
+  protected int maxPlace() {
+    return runtimes.length;
+  }
+
+  @Override
+  protected int here() {
+    return here;
+  }
+
+  @Override
+  protected boolean isLive(int place) {
+    final GlobalRuntimeImpl[] runtimes = LocalTransport.runtimes;
+    return place < runtimes.length && runtimes[place] != null;
+  }
+
+  @Override
+  protected void send(int place, SerializableRunnable f) {
+    if (place == here) {
+      f.run();
+      return;
+    }
+    final GlobalRuntimeImpl[] runtimes = LocalTransport.runtimes;
+    final GlobalRuntimeImpl target = place < runtimes.length ? runtimes[place]
+        : null;
+    if (target == null) {
+      throw new DeadPlaceException(new Place(place));
+    }
+    final byte[] bytes;
+    final int length;
+    if (kryo) {
+      final Output output = LocalTransport.output.get();
+      output.clear();
+      final int previous = setDestination(place);
+      try {
+        getKryo().writeClassAndObject(output, f);
+      } finally {
+        setDestination(previous);
+      }
+      bytes = output.getBuffer();
+      length = output.position();
+    } else {
+      final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      try (ObjectOutputStream oos = Lambdas.newObjectOutputStream(baos)) {
+        oos.writeObject(f);
+      } catch (final IOException e) {
+        throw new RuntimeException(e);
+      }
+      bytes = baos.toByteArray();
+      length = bytes.length;
+    }
+    final GlobalRuntimeImpl previous = GlobalRuntimeImpl.setRuntime(target);
+    try {
+      final SerializableRunnable g;
+      try {
+        g = decode(bytes, length);
+      } catch (final Throwable e) {
+        System.err.println(
+            "[APGAS] Ignoring failure to receive a message at place " + place
+                + " due to: " + e);
+        return;
+      }
+      g.run();
+    } finally {
+      GlobalRuntimeImpl.setRuntime(previous);
+    }
+  }
+
+  /**
+   * Deserializes a message in the context of the destination place.
+   *
+   * @param bytes
+   *          the serialized message
+   * @param length
+   *          the length of the message
+   * @return the message
+   * @throws Exception
+   *           if deserialization fails
+   */
+  private SerializableRunnable decode(byte[] bytes, int length)
+      throws Exception {
+    if (kryo) {
+      return (SerializableRunnable) getKryo()
+          .readClassAndObject(new Input(bytes, 0, length));
+    }
+    try (ObjectInputStream ois = new ObjectInputStream(
+        new ByteArrayInputStream(bytes, 0, length))) {
+      return (SerializableRunnable) ois.readObject();
+    }
+  }
+}
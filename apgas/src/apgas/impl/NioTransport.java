@@ -0,0 +1,1497 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package apgas.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedTransferQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.io.UnsafeInput;
+import com.esotericsoftware.kryo.io.UnsafeOutput;
+import com.hazelcast.core.IMap;
+
+import apgas.DeadPlaceException;
+import apgas.Place;
+
+/**
+ * The {@link NioTransport} class implements active messages over non-blocking
+ * {@code java.nio} socket channels.
+ * <p>
+ * Hazelcast is only used for membership and the resilient store. Each place
+ * listens on a server socket whose address is published in a distributed map.
+ * Messages are sent as length-prefixed frames over links opened on first use.
+ * A single selector thread decodes incoming frames and hands the tasks
+ * directly to the pool of the global runtime.
+ * <p>
+ * Each pair of places uses two links: a bulk link for tasks and a control link
+ * for the runtime messages sent with {@link #sendControl}, so that control
+ * frames never queue behind large payloads. Control frames are neither
+ * coalesced nor subject to flow control.
+ * <p>
+ * If {@link Config#APGAS_TRANSPORT_COALESCING_SIZE} is set, frames bound to the
+ * same place are aggregated and written together once the batch reaches this
+ * size, once {@link Config#APGAS_TRANSPORT_COALESCING_DELAY} microseconds have
+ * elapsed, or when a worker goes idle or blocks.
+ * <p>
+ * If {@link Config#APGAS_TRANSPORT_MAX_LINKS} is set, opening a link beyond
+ * this many closes the least recently used idle link. If
+ * {@link Config#APGAS_TRANSPORT_LINK_IDLE} is set, links idle for this many
+ * milliseconds are closed. Closed links are reopened on demand, so that the
+ * number of open sockets tracks the communication pattern rather than the
+ * number of places.
+ * <p>
+ * If {@link Config#APGAS_TRANSPORT_SERIALIZERS} is set, the thread spawning a
+ * remote task only enqueues it. Dedicated threads serialize the queued tasks
+ * into per-thread buffers, reused whenever the frame is written or batched
+ * immediately, and hand the frames to the links. Failures past the liveness
+ * check are reported to the finish of the task.
+ * <p>
+ * If {@link Config#APGAS_TRANSPORT_CREDITS} is set, each place may have at most
+ * this many bytes in flight to any other place. The receiving place returns
+ * credits once the pool has caught up with the tasks received, so that a fast
+ * producer cannot flood a slow consumer. Senders that run out of credits block
+ * via {@link ForkJoinPool#managedBlock}, except for the transport threads,
+ * which are allowed to overdraw.
+ */
+public class NioTransport extends Transport {
+  private static String APGAS_NIO = "apgas:nio";
+
+  /**
+   * Initial capacity of the receive buffers.
+   */
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /**
+   * The global runtime instance.
+   */
+  private final GlobalRuntimeImpl runtime;
+
+  /**
+   * The socket addresses of the places indexed by place ID.
+   */
+  private final IMap<Integer, String> addresses;
+
+  /**
+   * The selector for all the channels of this place.
+   */
+  private final Selector selector;
+
+  /**
+   * The server socket accepting incoming links.
+   */
+  private final ServerSocketChannel server;
+
+  /**
+   * The socket addresses fetched so far indexed by place ID.
+   */
+  private final Map<Integer, String> addressCache = new ConcurrentHashMap<>();
+
+  /**
+   * The outgoing bulk links indexed by place ID.
+   */
+  private final Map<Integer, Link> links = new ConcurrentHashMap<>();
+
+  /**
+   * The outgoing control links indexed by place ID.
+   */
+  private final Map<Integer, Link> controlLinks = new ConcurrentHashMap<>();
+
+  /**
+   * Links waiting for the selector thread to enable write notifications.
+   */
+  private final ConcurrentLinkedQueue<Link> pending = new ConcurrentLinkedQueue<>();
+
+  /**
+   * Links with a non-empty batch.
+   */
+  private final ConcurrentLinkedQueue<Link> dirty = new ConcurrentLinkedQueue<>();
+
+  /**
+   * The credit windows indexed by destination place ID.
+   */
+  private final Map<Integer, Window> windows = new ConcurrentHashMap<>();
+
+  /**
+   * The flow control budget in bytes per destination or zero if disabled.
+   */
+  final int credits;
+
+  /**
+   * The number of sends that ran out of credits.
+   */
+  private final LongAdder stalls = new LongAdder();
+
+  /**
+   * The cumulated time in nanoseconds spent waiting for credits.
+   */
+  private final LongAdder stallTime = new LongAdder();
+
+  /**
+   * The maximal number of open outgoing links or zero if unbounded.
+   */
+  private final int maxLinks;
+
+  /**
+   * The idle time in nanoseconds after which a link is closed or zero if
+   * idle links are kept open.
+   */
+  private final long linkIdle;
+
+  /**
+   * The batch size threshold in bytes or zero if coalescing is disabled.
+   */
+  private final int coalescingSize;
+
+  /**
+   * The maximal delay in nanoseconds before a batch is written.
+   */
+  private final long coalescingDelay;
+
+  /**
+   * The tasks waiting to be serialized or null if serialization is done by
+   * the spawning threads.
+   */
+  private final LinkedTransferQueue<Outgoing> outgoing;
+
+  /**
+   * The serializer threads.
+   */
+  private final Thread[] serializers;
+
+  /**
+   * The selector thread.
+   */
+  private final Thread thread;
+
+  /**
+   * The thread writing batches upon timeout or null if coalescing is disabled.
+   */
+  private final Thread flusher;
+
+  /**
+   * False once shutdown is in progress.
+   */
+  private volatile boolean running = true;
+
+  /**
+   * Initializes the {@link NioTransport} for this global runtime instance.
+   *
+   * @param runtime
+   *          the global runtime instance
+   * @param master
+   *          member to connect to or null
+   * @param localhost
+   *          the preferred ip address of this host or null
+   * @param compact
+   *          reduces thread creation if set
+   * @param kryo
+   *          use kryo serialization if set
+   * @throws IOException
+   *           if the server socket cannot be opened
+   */
+  public NioTransport(GlobalRuntimeImpl runtime, String master,
+      String localhost, boolean compact, boolean kryo) throws IOException {
+    super(runtime, master, localhost, compact, kryo);
+    this.runtime = runtime;
+    final String host = super.getAddress().split(":")[0];
+    selector = Selector.open();
+    server = ServerSocketChannel.open();
+    server.bind(new InetSocketAddress(host, 0));
+    server.configureBlocking(false);
+    server.register(selector, SelectionKey.OP_ACCEPT);
+    addresses = hazelcast.getMap(APGAS_NIO);
+    addresses.put(here(),
+        host + ":" + ((InetSocketAddress) server.getLocalAddress()).getPort());
+    thread = new Thread(this::select, APGAS_NIO);
+    thread.setDaemon(true);
+    coalescingSize = Integer.getInteger(Config.APGAS_TRANSPORT_COALESCING_SIZE,
+        0);
+    coalescingDelay = 1000L
+        * Integer.getInteger(Config.APGAS_TRANSPORT_COALESCING_DELAY, 100);
+    credits = Integer.getInteger(Config.APGAS_TRANSPORT_CREDITS, 0);
+    maxLinks = Integer.getInteger(Config.APGAS_TRANSPORT_MAX_LINKS, 0);
+    linkIdle = 1000000L
+        * Integer.getInteger(Config.APGAS_TRANSPORT_LINK_IDLE, 0);
+    final int n = Integer.getInteger(Config.APGAS_TRANSPORT_SERIALIZERS, 0);
+    outgoing = n > 0 ? new LinkedTransferQueue<>() : null;
+    serializers = new Thread[n];
+    for (int i = 0; i < n; i++) {
+      serializers[i] = new Thread(this::serialize,
+          APGAS_NIO + ":serializer:" + i);
+      serializers[i].setDaemon(true);
+    }
+    if (coalescingSize > 0) {
+      flusher = new Thread(this::expire, APGAS_NIO + ":flusher");
+      flusher.setDaemon(true);
+    } else {
+      flusher = null;
+    }
+  }
+
+  @Override
+  protected synchronized void start() {
+    super.start();
+    thread.start();
+    for (final Thread serializer : serializers) {
+      serializer.start();
+    }
+    if (flusher != null) {
+      flusher.start();
+    }
+  }
+
+  @Override
+  protected synchronized void shutdown() {
+    flush();
+    running = false;
+    selector.wakeup();
+    if (flusher != null) {
+      LockSupport.unpark(flusher);
+    }
+    try {
+      thread.join();
+    } catch (final InterruptedException e) {
+    }
+    super.shutdown();
+  }
+
+  @Override
+  protected void send(int place, SerializableRunnable f) {
+    if (place == here()) {
+      f.run();
+      return;
+    }
+    if (!isLive(place)) {
+      throw new DeadPlaceException(new Place(place));
+    }
+    if (outgoing != null) {
+      outgoing.add(new Outgoing(place, f));
+      return;
+    }
+    try {
+      write(place, encode(place, f), f);
+    } catch (final IOException e) {
+      close(place);
+      throw new DeadPlaceException(new Place(place));
+    }
+  }
+
+  @Override
+  protected void sendControl(int place, SerializableRunnable f) {
+    if (place == here()) {
+      f.run();
+      return;
+    }
+    if (!isLive(place)) {
+      throw new DeadPlaceException(new Place(place));
+    }
+    try {
+      post(place, true, encode(place, f), f);
+    } catch (final IOException e) {
+      close(place);
+      throw new DeadPlaceException(new Place(place));
+    }
+  }
+
+  /**
+   * Writes a frame to the given place.
+   *
+   * @param place
+   *          a place ID
+   * @param frame
+   *          the frame
+   * @param message
+   *          the message encoded in the frame
+   * @throws IOException
+   *           if an I/O error occurs
+   */
+  void write(int place, ByteBuffer frame, SerializableRunnable message)
+      throws IOException {
+    acquire(place, frame.remaining());
+    post(place, false, frame, message);
+  }
+
+  /**
+   * Acquires credits for a frame to the given place if flow control is
+   * enabled, waiting if necessary.
+   *
+   * @param place
+   *          a place ID
+   * @param length
+   *          the length of the frame including its header
+   */
+  void acquire(int place, int length) {
+    if (credits > 0) {
+      windows.computeIfAbsent(place, Window::new).acquire(length);
+    }
+  }
+
+  /**
+   * Writes a frame to the given place on the requested link, reopening the
+   * link if it has been closed concurrently.
+   *
+   * @param place
+   *          a place ID
+   * @param control
+   *          true for the control link, false for the bulk link
+   * @param frame
+   *          the frame
+   * @param message
+   *          the message encoded in the frame or null
+   * @throws IOException
+   *           if an I/O error occurs, the link is then closed and the message
+   *           is not reported as lost
+   */
+  void post(int place, boolean control, ByteBuffer frame,
+      SerializableRunnable message) throws IOException {
+    while (true) {
+      final Link link;
+      try {
+        link = link(place, control);
+      } catch (final IOException e) {
+        final Window window = control ? null : windows.get(place);
+        if (window != null) {
+          window.release(frame.remaining());
+        }
+        throw e;
+      }
+      try {
+        if (link.post(frame, message)) {
+          return;
+        }
+      } catch (final IOException e) {
+        close(link, message);
+        throw e;
+      }
+      // retry with a new link
+    }
+  }
+
+  @Override
+  protected void flush() {
+    Link link;
+    while ((link = dirty.poll()) != null) {
+      try {
+        link.flushDirty();
+      } catch (final IOException e) {
+        close(link);
+      }
+    }
+  }
+
+  /**
+   * Returns the number of sends that ran out of credits so far.
+   *
+   * @return the number of stalls
+   */
+  public long getCreditStalls() {
+    return stalls.sum();
+  }
+
+  /**
+   * Returns the cumulated time spent waiting for credits so far.
+   *
+   * @return the stall time in nanoseconds
+   */
+  public long getCreditStallTime() {
+    return stallTime.sum();
+  }
+
+  /**
+   * Returns the number of open outgoing links.
+   *
+   * @return the number of links
+   */
+  public int getOpenLinks() {
+    return links.size() + controlLinks.size();
+  }
+
+  /**
+   * Returns true if the current thread may wait for credits.
+   * <p>
+   * The threads of the transport must not block as they deliver the credits.
+   *
+   * @return true if blocking is allowed
+   */
+  boolean mayBlock() {
+    final Thread t = Thread.currentThread();
+    return t != thread && t != flusher;
+  }
+
+  /**
+   * The flusher loop: writes pending batches every
+   * {@link Config#APGAS_TRANSPORT_COALESCING_DELAY} microseconds and parks
+   * when there are none.
+   */
+  private void expire() {
+    // closing a link reports its lost tasks to their finish
+    GlobalRuntimeImpl.setRuntime(runtime);
+    while (running) {
+      if (dirty.isEmpty()) {
+        LockSupport.park(this);
+      } else {
+        LockSupport.parkNanos(this, coalescingDelay);
+        flush();
+      }
+    }
+  }
+
+  /**
+   * The serializer loop: encodes and writes the queued tasks.
+   */
+  private void serialize() {
+    GlobalRuntimeImpl.setRuntime(runtime);
+    Output output = new UnsafeOutput(BUFFER_SIZE, -1);
+    while (running) {
+      final Outgoing message;
+      try {
+        message = outgoing.poll(100, TimeUnit.MILLISECONDS);
+      } catch (final InterruptedException e) {
+        continue;
+      }
+      if (message == null) {
+        continue;
+      }
+      try {
+        final ByteBuffer frame = kryo
+            ? encode(message.place, message.f, output)
+            : encode(message.place, message.f);
+        try {
+          write(message.place, frame, message.f);
+        } catch (final IOException e) {
+          close(message.place);
+          throw new DeadPlaceException(new Place(message.place));
+        }
+        if (frame.hasRemaining()) {
+          // the frame is queued, the buffer cannot be reused
+          output = new UnsafeOutput(BUFFER_SIZE, -1);
+        }
+      } catch (final Throwable e) {
+        if (message.f instanceof Task) {
+          ((Task) message.f).failedAt(message.place, e);
+        } else if (runtime.verboseSerialization
+            && !(e instanceof DeadPlaceException)) {
+          System.err.println("[APGAS] Failed to send a message to place "
+              + message.place + " due to: " + e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Serializes a message into a length-prefixed frame using the given Kryo
+   * output.
+   *
+   * @param place
+   *          the destination
+   * @param f
+   *          the message
+   * @param output
+   *          the output, reset before use
+   * @return the frame, backed by the buffer of the output
+   */
+  private ByteBuffer encode(int place, SerializableRunnable f,
+      Output output) {
+    output.setPosition(4);
+    final int previous = setDestination(place);
+    try {
+      getKryo().writeClassAndObject(output, f);
+    } finally {
+      setDestination(previous);
+    }
+    final ByteBuffer frame = ByteBuffer.wrap(output.getBuffer(), 0,
+        output.position());
+    frame.putInt(0, frame.remaining() - 4);
+    return frame;
+  }
+
+  /**
+   * Serializes a message into a length-prefixed frame.
+   *
+   * @param place
+   *          the destination
+   * @param f
+   *          the message
+   * @return the frame
+   */
+  ByteBuffer encode(int place, SerializableRunnable f) {
+    final ByteBuffer frame;
+    if (kryo) {
+      final Output output = new UnsafeOutput(256, -1);
+      output.setPosition(4);
+      final int previous = setDestination(place);
+      try {
+        getKryo().writeClassAndObject(output, f);
+      } finally {
+        setDestination(previous);
+      }
+      frame = ByteBuffer.wrap(output.getBuffer(), 0, output.position());
+    } else {
+      final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      try {
+        baos.write(new byte[4]);
+        final ObjectOutputStream oos = Lambdas.newObjectOutputStream(baos);
+        oos.writeObject(f);
+        oos.close();
+      } catch (final IOException e) {
+        throw new RuntimeException(e);
+      }
+      frame = ByteBuffer.wrap(baos.toByteArray());
+    }
+    frame.putInt(0, frame.remaining() - 4);
+    return frame;
+  }
+
+  /**
+   * Deserializes a message.
+   *
+   * @param bytes
+   *          the backing array of the receive buffer
+   * @param offset
+   *          the offset of the message
+   * @param length
+   *          the length of the message
+   * @return the message
+   * @throws Exception
+   *           if deserialization fails
+   */
+  private SerializableRunnable decode(byte[] bytes, int offset, int length)
+      throws Exception {
+    if (kryo) {
+      final Input input = new UnsafeInput(bytes, offset, length);
+      return (SerializableRunnable) getKryo()
+          .readClassAndObject(input);
+    }
+    try (ObjectInputStream ois = new ObjectInputStream(
+        new ByteArrayInputStream(bytes, offset, length))) {
+      return (SerializableRunnable) ois.readObject();
+    }
+  }
+
+  /**
+   * Returns the socket address of the given place.
+   *
+   * @param place
+   *          a place ID
+   * @return an address in the form "ip:port"
+   * @throws DeadPlaceException
+   *           if the place is dead
+   */
+  String address(int place) {
+    String address = addressCache.get(place);
+    if (address != null) {
+      return address;
+    }
+    // the address is published right after the place joins the cluster
+    while ((address = addresses.get(place)) == null) {
+      if (!isLive(place)) {
+        throw new DeadPlaceException(new Place(place));
+      }
+      Thread.yield();
+    }
+    addressCache.put(place, address);
+    return address;
+  }
+
+  /**
+   * Returns the link to the given place, connecting if necessary.
+   *
+   * @param place
+   *          a place ID
+   * @param control
+   *          true for the control link, false for the bulk link
+   * @return the link
+   * @throws IOException
+   *           if the connection fails
+   */
+  private Link link(int place, boolean control) throws IOException {
+    final Map<Integer, Link> links = control ? controlLinks : this.links;
+    final Link link = links.get(place);
+    if (link != null) {
+      return link;
+    }
+    synchronized (links) {
+      Link l = links.get(place);
+      if (l == null) {
+        final String[] hostAndPort = address(place).split(":");
+        final SocketChannel channel = SocketChannel.open(new InetSocketAddress(
+            hostAndPort[0], Integer.parseInt(hostAndPort[1])));
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        channel.configureBlocking(false);
+        l = new Link(place, channel, control);
+        // identify this place and the lane to the receiver
+        final ByteBuffer hello = ByteBuffer.allocate(4);
+        hello.putInt(0, control ? -1 - here() : here());
+        l.write(hello, null, false);
+        links.put(place, l);
+      }
+      if (maxLinks > 0) {
+        evict(l);
+      }
+      return l;
+    }
+  }
+
+  /**
+   * Closes least recently used idle links until the number of open links is
+   * within {@link #maxLinks}.
+   * <p>
+   * Busy links are never closed, hence the cap may be exceeded temporarily.
+   *
+   * @param recent
+   *          a link that must not be closed
+   */
+  private void evict(Link recent) {
+    while (links.size() + controlLinks.size() > maxLinks) {
+      Link lru = null;
+      for (final Link l : links.values()) {
+        if (l != recent && l.isIdle()
+            && (lru == null || l.lastUse - lru.lastUse < 0)) {
+          lru = l;
+        }
+      }
+      for (final Link l : controlLinks.values()) {
+        if (l != recent && l.isIdle()
+            && (lru == null || l.lastUse - lru.lastUse < 0)) {
+          lru = l;
+        }
+      }
+      if (lru == null || !retire(lru)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Closes the links idle for more than {@link #linkIdle}. Invoked by the
+   * selector thread.
+   */
+  private void reap() {
+    final long now = System.nanoTime();
+    for (final Link l : links.values()) {
+      if (now - l.lastUse > linkIdle) {
+        retire(l);
+      }
+    }
+    for (final Link l : controlLinks.values()) {
+      if (now - l.lastUse > linkIdle) {
+        retire(l);
+      }
+    }
+  }
+
+  /**
+   * Closes a link if idle.
+   *
+   * @param link
+   *          the link
+   * @return true if the link has been closed
+   */
+  private boolean retire(Link link) {
+    synchronized (link) {
+      if (!link.isIdle()) {
+        return false;
+      }
+      link.closed = true;
+    }
+    close(link);
+    return true;
+  }
+
+  /**
+   * Closes the links to the given place if any.
+   *
+   * @param place
+   *          a place ID
+   */
+  private void close(int place) {
+    Link link = links.get(place);
+    if (link != null) {
+      close(link);
+    }
+    link = controlLinks.get(place);
+    if (link != null) {
+      close(link);
+    }
+  }
+
+  /**
+   * Closes the given link and reports the messages it has not written.
+   *
+   * @param link
+   *          the link
+   */
+  private void close(Link link) {
+    close(link, null);
+  }
+
+  /**
+   * Closes the given link and reports the messages it has not written.
+   * <p>
+   * Lost tasks are reported to their finish with a
+   * {@link DeadPlaceException}. Other lost messages are logged.
+   *
+   * @param link
+   *          the link
+   * @param sent
+   *          a message whose loss the caller reports itself or null
+   */
+  private void close(Link link, SerializableRunnable sent) {
+    final List<SerializableRunnable> lost = link.drop();
+    (link.control ? controlLinks : links).remove(link.place, link);
+    try {
+      link.channel.close();
+    } catch (final IOException e) {
+    }
+    int dropped = 0;
+    for (final SerializableRunnable message : lost) {
+      if (message == sent) {
+        continue;
+      }
+      if (message instanceof Task) {
+        ((Task) message).failedAt(link.place,
+            new DeadPlaceException(new Place(link.place)));
+      } else {
+        dropped++;
+      }
+    }
+    if (dropped > 0) {
+      System.err.println("[APGAS] Dropped " + dropped
+          + " messages to place " + link.place + " from place "
+          + runtime.here + " due to a link failure");
+    }
+  }
+
+  /**
+   * The selector loop.
+   */
+  private void select() {
+    // closing a link reports its lost tasks to their finish
+    GlobalRuntimeImpl.setRuntime(runtime);
+    try {
+      long reaped = System.nanoTime();
+      while (running) {
+        if (linkIdle > 0) {
+          selector.select(Math.max(1, linkIdle / 2000000));
+          if (System.nanoTime() - reaped > linkIdle / 2) {
+            reap();
+            reaped = System.nanoTime();
+          }
+        } else {
+          selector.select();
+        }
+        Link link;
+        while ((link = pending.poll()) != null) {
+          try {
+            if (link.key == null) {
+              link.key = link.channel.register(selector, SelectionKey.OP_WRITE,
+                  link);
+            } else {
+              link.key.interestOps(SelectionKey.OP_WRITE);
+            }
+          } catch (final IOException | IllegalStateException e) {
+            close(link);
+          }
+        }
+        for (final SelectionKey key : selector.selectedKeys()) {
+          try {
+            if (!key.isValid()) {
+              continue;
+            }
+            if (key.isAcceptable()) {
+              final SocketChannel channel = server.accept();
+              if (channel != null) {
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                channel.configureBlocking(false);
+                channel.register(selector, SelectionKey.OP_READ,
+                    new Inbound());
+              }
+            } else if (key.isReadable()) {
+              read(key);
+            } else if (key.isWritable()) {
+              ((Link) key.attachment()).flush();
+            }
+          } catch (final IOException | IllegalStateException e) {
+            // includes CancelledKeyException if a worker closed the link
+            final Object attachment = key.attachment();
+            if (attachment instanceof Link) {
+              close((Link) attachment);
+              continue;
+            }
+            if (attachment instanceof Inbound
+                && ((Inbound) attachment).consumed > 0) {
+              // return the credits of the frames received before the close
+              grant((Inbound) attachment);
+            }
+            key.cancel();
+            try {
+              key.channel().close();
+            } catch (final IOException x) {
+            }
+          }
+        }
+        selector.selectedKeys().clear();
+      }
+    } catch (final IOException | ClosedSelectorException e) {
+      if (running) {
+        System.err.println("[APGAS] Selector failure at place "
+            + runtime.here + " due to: " + e);
+      }
+    }
+    for (final SelectionKey key : selector.keys()) {
+      try {
+        key.channel().close();
+      } catch (final IOException e) {
+      }
+    }
+    try {
+      selector.close();
+    } catch (final IOException e) {
+    }
+  }
+
+  /**
+   * Reads the available bytes from an incoming link and dispatches the
+   * complete frames.
+   *
+   * @param key
+   *          the selection key of the incoming link
+   * @throws IOException
+   *           if an I/O error occurs
+   */
+  private void read(SelectionKey key) throws IOException {
+    final Inbound inbound = (Inbound) key.attachment();
+    final ByteBuffer buffer = inbound.buffer;
+    if (((SocketChannel) key.channel()).read(buffer) < 0) {
+      throw new IOException("Connection closed by peer");
+    }
+    buffer.flip();
+    if (inbound.place < 0 && buffer.remaining() >= 4) {
+      final int hello = buffer.getInt();
+      inbound.control = hello < 0;
+      inbound.place = hello < 0 ? -1 - hello : hello;
+    }
+    int needed = 0;
+    while (inbound.place >= 0 && buffer.remaining() >= 4) {
+      final int length = buffer.getInt(buffer.position());
+      if (length < 0) {
+        // credit grant
+        buffer.position(buffer.position() + 4);
+        final Window window = windows.get(inbound.place);
+        if (window != null) {
+          window.release(-length);
+        }
+        continue;
+      }
+      if (buffer.remaining() - 4 < length) {
+        needed = length + 4;
+        break;
+      }
+      final int offset = buffer.position() + 4;
+      buffer.position(offset + length);
+      dispatch(buffer.array(), offset, length);
+      if (credits > 0 && !inbound.control) {
+        consumed(inbound, length + 4);
+      }
+    }
+    buffer.compact();
+    if (needed > buffer.capacity()) {
+      final ByteBuffer b = ByteBuffer.allocate(needed);
+      buffer.flip();
+      b.put(buffer);
+      inbound.buffer = b;
+    }
+  }
+
+  /**
+   * Accounts for a frame received on an incoming link or ring and returns the
+   * credits to the sender once a quarter of the budget has been consumed.
+   * <p>
+   * The grant is submitted to the pool after the tasks it covers so that the
+   * sender is only released when the pool makes progress.
+   *
+   * @param inbound
+   *          the incoming link
+   * @param length
+   *          the length of the frame including its header
+   */
+  void consumed(Inbound inbound, int length) {
+    inbound.consumed += length;
+    if (inbound.consumed >= credits / 4) {
+      grant(inbound);
+    }
+  }
+
+  /**
+   * Returns the credits consumed on an incoming link to the sender.
+   *
+   * @param inbound
+   *          the incoming link
+   */
+  private void grant(Inbound inbound) {
+    final int place = inbound.place;
+    final ByteBuffer grant = ByteBuffer.allocate(4);
+    grant.putInt(0, -inbound.consumed);
+    inbound.consumed = 0;
+    runtime.execute(new RecursiveAction() {
+      private static final long serialVersionUID = -2373427612513622717L;
+
+      @Override
+      protected void compute() {
+        Worker.setTask(null);
+        try {
+          post(place, true, grant, null);
+        } catch (final IOException | DeadPlaceException e) {
+          close(place);
+        }
+      }
+    });
+  }
+
+  /**
+   * Decodes a message and runs it.
+   * <p>
+   * Tasks submit themselves to the pool of the global runtime when run.
+   *
+   * @param bytes
+   *          the backing array of the receive buffer
+   * @param offset
+   *          the offset of the message
+   * @param length
+   *          the length of the message
+   */
+  void dispatch(byte[] bytes, int offset, int length) {
+    try {
+      decode(bytes, offset, length).run();
+    } catch (final Throwable e) {
+      System.err.println("[APGAS] Ignoring failure to receive a message at place "
+          + runtime.here + " due to: " + e);
+    }
+  }
+
+  /**
+   * The {@link Inbound} class represents an incoming link or shared memory
+   * ring. Only accessed by the thread receiving from it.
+   */
+  static final class Inbound {
+    /**
+     * The receive buffer or null for a ring.
+     */
+    ByteBuffer buffer;
+
+    /**
+     * The source place ID or -1 until received.
+     */
+    int place;
+
+    /**
+     * True if this is a control link.
+     */
+    boolean control;
+
+    /**
+     * The number of bytes received since the last credit grant.
+     */
+    int consumed;
+
+    /**
+     * Constructs an incoming link.
+     */
+    Inbound() {
+      buffer = ByteBuffer.allocate(BUFFER_SIZE);
+      place = -1;
+    }
+
+    /**
+     * Constructs an incoming ring.
+     *
+     * @param place
+     *          the source place ID
+     */
+    Inbound(int place) {
+      this.place = place;
+    }
+  }
+
+  /**
+   * The {@link Outgoing} class represents a task waiting to be serialized.
+   */
+  private static final class Outgoing {
+    /**
+     * The destination place ID.
+     */
+    final int place;
+
+    /**
+     * The task.
+     */
+    final SerializableRunnable f;
+
+    Outgoing(int place, SerializableRunnable f) {
+      this.place = place;
+      this.f = f;
+    }
+  }
+
+  /**
+   * The {@link Pending} class represents a buffer queued on an outgoing link.
+   */
+  private static final class Pending {
+    /**
+     * The buffer: a sequence of length-prefixed frames starting at index 0 or
+     * the hello message of the link.
+     */
+    final ByteBuffer buffer;
+
+    /**
+     * The message or list of messages encoded in the buffer or null.
+     */
+    final Object messages;
+
+    /**
+     * True if the frames of the buffer hold credits of the destination.
+     */
+    final boolean credited;
+
+    Pending(ByteBuffer buffer, Object messages, boolean credited) {
+      this.buffer = buffer;
+      this.messages = messages;
+      this.credited = credited;
+    }
+
+    /**
+     * Returns the total length of the frames not completely written yet.
+     *
+     * @return a number of bytes
+     */
+    int unwritten() {
+      int length = 0;
+      for (int offset = 0; offset < buffer.limit();) {
+        final int frame = 4 + buffer.getInt(offset);
+        if (offset + frame > buffer.position()) {
+          length += frame;
+        }
+        offset += frame;
+      }
+      return length;
+    }
+  }
+
+  /**
+   * The {@link Window} class tracks the bytes sent to a place and not yet
+   * acknowledged by a credit grant.
+   */
+  private final class Window {
+    /**
+     * The destination place ID.
+     */
+    final int place;
+
+    /**
+     * The number of outstanding bytes.
+     */
+    private long outstanding;
+
+    /**
+     * Constructs a window.
+     *
+     * @param place
+     *          the destination place ID
+     */
+    Window(int place) {
+      this.place = place;
+    }
+
+    /**
+     * Acquires credits for a frame if available. A frame larger than the
+     * budget is admitted when nothing is outstanding.
+     *
+     * @param length
+     *          the length of the frame
+     * @return true if the credits have been acquired
+     */
+    synchronized boolean tryAcquire(int length) {
+      if (outstanding > 0 && outstanding + length > credits) {
+        return false;
+      }
+      outstanding += length;
+      return true;
+    }
+
+    /**
+     * Acquires credits for a frame, waiting if necessary.
+     *
+     * @param length
+     *          the length of the frame
+     * @throws DeadPlaceException
+     *           if the destination place dies while waiting
+     */
+    void acquire(int length) {
+      if (tryAcquire(length)) {
+        return;
+      }
+      if (!mayBlock()) {
+        synchronized (this) {
+          outstanding += length;
+        }
+        return;
+      }
+      stalls.increment();
+      final long start = System.nanoTime();
+      final ForkJoinPool.ManagedBlocker blocker =
+          new ForkJoinPool.ManagedBlocker() {
+        @Override
+        public boolean isReleasable() {
+          return tryAcquire(length);
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+          synchronized (Window.this) {
+            while (!tryAcquire(length)) {
+              if (!isLive(place)) {
+                throw new DeadPlaceException(new Place(place));
+              }
+              Window.this.wait(100);
+            }
+          }
+          return true;
+        }
+      };
+      try {
+        while (true) {
+          try {
+            ForkJoinPool.managedBlock(blocker);
+            return;
+          } catch (final InterruptedException e) {
+          }
+        }
+      } finally {
+        stallTime.add(System.nanoTime() - start);
+      }
+    }
+
+    /**
+     * Returns credits.
+     *
+     * @param length
+     *          the number of bytes acknowledged by the destination
+     */
+    synchronized void release(int length) {
+      outstanding -= length;
+      notifyAll();
+    }
+  }
+
+  /**
+   * The {@link Link} class represents an outgoing link to a place.
+   */
+  private final class Link {
+    /**
+     * The destination place ID.
+     */
+    final int place;
+
+    /**
+     * The socket channel.
+     */
+    final SocketChannel channel;
+
+    /**
+     * The buffers waiting to be written.
+     */
+    private final ArrayDeque<Pending> queue = new ArrayDeque<>();
+
+    /**
+     * The selection key of this link once registered with the selector.
+     */
+    SelectionKey key;
+
+    /**
+     * The frames aggregated so far or null if none.
+     */
+    private byte[] batch;
+
+    /**
+     * The number of bytes in the current batch.
+     */
+    private int batchSize;
+
+    /**
+     * The messages of the current batch.
+     */
+    private List<SerializableRunnable> batched;
+
+    /**
+     * True while this link is in {@link NioTransport#dirty}.
+     */
+    private boolean queued;
+
+    /**
+     * True if this is a control link.
+     */
+    final boolean control;
+
+    /**
+     * The time of the last use of this link as reported by
+     * {@link System#nanoTime()}.
+     */
+    volatile long lastUse = System.nanoTime();
+
+    /**
+     * True once the link has been closed. Frames can no longer be posted.
+     */
+    boolean closed;
+
+    /**
+     * Constructs a link.
+     *
+     * @param place
+     *          the destination place ID
+     * @param channel
+     *          the socket channel
+     * @param control
+     *          true for a control link
+     */
+    Link(int place, SocketChannel channel, boolean control) {
+      this.place = place;
+      this.channel = channel;
+      this.control = control;
+    }
+
+    /**
+     * Writes a frame, or batches it if coalescing is enabled and this is a
+     * bulk link.
+     *
+     * @param frame
+     *          the frame
+     * @param message
+     *          the message encoded in the frame or null
+     * @return false if the link has been closed
+     * @throws IOException
+     *           if an I/O error occurs
+     */
+    synchronized boolean post(ByteBuffer frame, SerializableRunnable message)
+        throws IOException {
+      if (closed) {
+        return false;
+      }
+      lastUse = System.nanoTime();
+      if (coalescingSize > 0 && !control) {
+        append(frame, message);
+      } else {
+        write(frame, message, credits > 0 && !control);
+      }
+      return true;
+    }
+
+    /**
+     * Returns true if no frame is waiting to be written.
+     *
+     * @return true if idle
+     */
+    synchronized boolean isIdle() {
+      return batch == null && queue.isEmpty();
+    }
+
+    /**
+     * Appends a frame to the current batch and writes the batch if it reaches
+     * the coalescing threshold.
+     *
+     * @param frame
+     *          the frame
+     * @param message
+     *          the message encoded in the frame or null
+     * @throws IOException
+     *           if an I/O error occurs
+     */
+    synchronized void append(ByteBuffer frame, SerializableRunnable message)
+        throws IOException {
+      final int length = frame.remaining();
+      if (batch == null) {
+        batch = new byte[Math.max(Math.min(coalescingSize, 4096), length)];
+        batched = new ArrayList<>();
+        if (!queued) {
+          // the link may still be queued if its last batch reached the size
+          queued = true;
+          if (dirty.isEmpty()) {
+            dirty.add(this);
+            LockSupport.unpark(flusher);
+          } else {
+            dirty.add(this);
+          }
+        }
+      } else if (batchSize + length > batch.length) {
+        batch = Arrays.copyOf(batch,
+            Math.max(2 * batch.length, batchSize + length));
+      }
+      frame.get(batch, batchSize, length);
+      batchSize += length;
+      if (message != null) {
+        batched.add(message);
+      }
+      if (batchSize >= coalescingSize) {
+        flushBatch();
+      }
+    }
+
+    /**
+     * Writes the current batch if any after the link has been removed from
+     * {@link NioTransport#dirty}.
+     *
+     * @throws IOException
+     *           if an I/O error occurs
+     */
+    synchronized void flushDirty() throws IOException {
+      queued = false;
+      flushBatch();
+    }
+
+    /**
+     * Writes the current batch if any.
+     *
+     * @throws IOException
+     *           if an I/O error occurs
+     */
+    synchronized void flushBatch() throws IOException {
+      if (batch == null) {
+        return;
+      }
+      final ByteBuffer frames = ByteBuffer.wrap(batch, 0, batchSize);
+      final List<SerializableRunnable> messages = batched;
+      batch = null;
+      batchSize = 0;
+      batched = null;
+      write(frames, messages, credits > 0);
+    }
+
+    /**
+     * Writes a buffer or queues it if the channel is busy.
+     * <p>
+     * The buffer is queued before an I/O error is rethrown, so that
+     * {@link #drop()} accounts for it.
+     *
+     * @param buffer
+     *          the buffer
+     * @param messages
+     *          the message or list of messages encoded in the buffer or null
+     * @param credited
+     *          true if the frames of the buffer hold credits
+     * @throws IOException
+     *           if an I/O error occurs
+     */
+    synchronized void write(ByteBuffer buffer, Object messages,
+        boolean credited) throws IOException {
+      if (queue.isEmpty()) {
+        try {
+          channel.write(buffer);
+        } catch (final IOException e) {
+          queue.add(new Pending(buffer, messages, credited));
+          throw e;
+        }
+        if (!buffer.hasRemaining()) {
+          return;
+        }
+      }
+      queue.add(new Pending(buffer, messages, credited));
+      if (queue.size() == 1) {
+        pending.add(this);
+        selector.wakeup();
+      }
+    }
+
+    /**
+     * Marks the link closed, discards the buffers not written yet, and returns
+     * the credits of their frames.
+     *
+     * @return the messages of the discarded frames
+     */
+    @SuppressWarnings("unchecked")
+    synchronized List<SerializableRunnable> drop() {
+      closed = true;
+      final List<SerializableRunnable> lost = new ArrayList<>();
+      int released = 0;
+      for (final Pending p : queue) {
+        if (p.messages instanceof List) {
+          lost.addAll((List<SerializableRunnable>) p.messages);
+        } else if (p.messages != null) {
+          lost.add((SerializableRunnable) p.messages);
+        }
+        if (p.credited) {
+          released += p.unwritten();
+        }
+      }
+      queue.clear();
+      if (batch != null) {
+        lost.addAll(batched);
+        if (credits > 0) {
+          released += batchSize;
+        }
+        batch = null;
+        batchSize = 0;
+        batched = null;
+      }
+      if (released > 0) {
+        final Window window = windows.get(place);
+        if (window != null) {
+          window.release(released);
+        }
+      }
+      return lost;
+    }
+
+    /**
+     * Writes queued frames. Invoked by the selector thread.
+     *
+     * @throws IOException
+     *           if an I/O error occurs
+     */
+    synchronized void flush() throws IOException {
+      Pending p;
+      while ((p = queue.peek()) != null) {
+        channel.write(p.buffer);
+        if (p.buffer.hasRemaining()) {
+          return;
+        }
+        queue.poll();
+      }
+      if (key.isValid()) {
+        key.interestOps(0);
+      }
+    }
+  }
+}
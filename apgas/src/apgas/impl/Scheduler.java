@@ -0,0 +1,226 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package apgas.impl;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinPool.ManagedBlocker;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import apgas.Configuration;
+
+/**
+ * The {@link Scheduler} class runs the tasks of a place.
+ * <p>
+ * Tasks run in a {@link ForkJoinPool} of {@link Worker} threads with a target
+ * parallelism of {@link Configuration#APGAS_THREADS}. When a worker blocks in
+ * a finish, the pool adds a spare worker if fewer than
+ * {@link Config#APGAS_MIN_RUNNABLE_THREADS} workers remain running, up to
+ * {@link Config#APGAS_MAX_THREADS} workers in total. Beyond that, workers
+ * block without compensation. Idle spare workers terminate after
+ * {@link Config#APGAS_KEEP_ALIVE} milliseconds.
+ * <p>
+ * Before blocking in a finish, a worker runs the pending tasks of the same
+ * finish at the top of its local queue. If
+ * {@link Config#APGAS_FINISH_HELP_DEPTH} is set, it runs pending tasks of any
+ * finish instead, up to this many nested finishes.
+ * <p>
+ * These settings use the {@link ForkJoinPool} API of Java 9. With Java 8, the
+ * pool always compensates up to {@link Config#APGAS_MAX_THREADS} workers by
+ * adjusting the internal control word of the pool.
+ * <p>
+ * Alternatively, every task runs on its own virtual thread if
+ * {@link Config#APGAS_VIRTUAL_THREADS} is set and the JVM supports it. The
+ * carrier threads are then managed by the JVM, not by this class.
+ */
+final class Scheduler {
+  /**
+   * The pool of workers.
+   * <p>
+   * Only backs the executor service of the runtime if tasks run on virtual
+   * threads.
+   */
+  final ForkJoinPool pool;
+
+  /**
+   * The factory of the virtual threads running the tasks or null if tasks run
+   * in the pool.
+   */
+  private final ThreadFactory virtualThreads;
+
+  /**
+   * The global runtime instance owning this scheduler.
+   */
+  private final GlobalRuntimeImpl runtime;
+
+  /**
+   * The number of times a blocked finish polls for termination before
+   * blocking the thread.
+   */
+  private final int spin;
+
+  /**
+   * The maximal number of nested finishes a worker helps in with tasks of any
+   * finish, zero to only run tasks of the same finish.
+   */
+  final int helpDepth;
+
+  /**
+   * Constructs a scheduler.
+   *
+   * @param runtime
+   *          the global runtime instance owning the scheduler
+   * @param threads
+   *          the target parallelism
+   * @throws ReflectiveOperationException
+   *           if the pool cannot be configured
+   */
+  Scheduler(GlobalRuntimeImpl runtime, int threads)
+      throws ReflectiveOperationException {
+    this.runtime = runtime;
+    final int maxThreads = Math.max(threads,
+        Integer.getInteger(Config.APGAS_MAX_THREADS, 256));
+    final int minRunnable = Integer
+        .getInteger(Config.APGAS_MIN_RUNNABLE_THREADS, threads);
+    final long keepAlive = Math.max(1,
+        Long.getLong(Config.APGAS_KEEP_ALIVE, 60000));
+    final boolean virtual = Boolean.getBoolean(Config.APGAS_VIRTUAL_THREADS);
+    spin = Math.max(0, Integer.getInteger(Config.APGAS_FINISH_SPIN, 0));
+    helpDepth = Math.max(0,
+        Integer.getInteger(Config.APGAS_FINISH_HELP_DEPTH, 0));
+
+    virtualThreads = virtual ? newVirtualThreadFactory() : null;
+    if (virtual && virtualThreads == null) {
+      System.err.println(
+          "[APGAS] Virtual threads are not supported by this JVM. Using default scheduler.");
+    }
+    final WorkerFactory factory = new WorkerFactory(runtime);
+    if (virtualThreads != null) {
+      pool = new ForkJoinPool(threads, factory, null, false);
+    } else {
+      pool = newPool(threads, maxThreads, minRunnable, keepAlive, factory);
+    }
+  }
+
+  /**
+   * Returns a pool with the given target parallelism and compensation policy.
+   */
+  private static ForkJoinPool newPool(int threads, int maxThreads,
+      int minRunnable, long keepAlive, ForkJoinWorkerThreadFactory factory)
+      throws ReflectiveOperationException {
+    final Constructor<ForkJoinPool> constructor;
+    try {
+      constructor = ForkJoinPool.class.getConstructor(int.class,
+          ForkJoinWorkerThreadFactory.class,
+          Thread.UncaughtExceptionHandler.class, boolean.class, int.class,
+          int.class, int.class, Predicate.class, long.class, TimeUnit.class);
+    } catch (final NoSuchMethodException e) {
+      // Java 8: raise the thread limit and restore the target parallelism
+      final ForkJoinPool pool = new ForkJoinPool(maxThreads, factory, null,
+          false);
+      final Field ctl = ForkJoinPool.class.getDeclaredField("ctl");
+      ctl.setAccessible(true);
+      ctl.setLong(pool,
+          ctl.getLong(pool) + (((long) maxThreads - threads) << 48));
+      return pool;
+    }
+    // block without compensation once maxThreads is reached
+    final Predicate<ForkJoinPool> saturate = pool -> true;
+    return constructor.newInstance(threads, factory, null, false, threads,
+        maxThreads, minRunnable, saturate, keepAlive, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Returns a factory of virtual threads if supported by this JVM.
+   * <p>
+   * The virtual threads run on the scheduler of the JVM, whose parallelism is
+   * only configurable on the command line with the
+   * {@code jdk.virtualThreadScheduler.parallelism} system property.
+   */
+  private static ThreadFactory newVirtualThreadFactory() {
+    try {
+      final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      return (ThreadFactory) Class.forName("java.lang.Thread$Builder")
+          .getMethod("factory").invoke(builder);
+    } catch (final ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns true if tasks run on virtual threads.
+   *
+   * @return true if tasks run on virtual threads
+   */
+  boolean isVirtual() {
+    return virtualThreads != null;
+  }
+
+  /**
+   * Submits a task for execution.
+   *
+   * @param task
+   *          the task
+   */
+  void execute(ForkJoinTask<?> task) {
+    if (virtualThreads == null) {
+      pool.execute(task);
+      return;
+    }
+    virtualThreads.newThread(() -> {
+      if (GlobalRuntimeImpl.shared) {
+        GlobalRuntimeImpl.setRuntime(runtime);
+      }
+      task.quietlyInvoke();
+    }).start();
+  }
+
+  /**
+   * Blocks the current thread until the blocker is releasable.
+   * <p>
+   * Polls the blocker {@link Config#APGAS_FINISH_SPIN} times first. Interrupts
+   * do not end the wait. The interrupt status of the thread is preserved.
+   *
+   * @param blocker
+   *          the blocker
+   */
+  void block(ManagedBlocker blocker) {
+    for (int i = 0; i < spin; i++) {
+      if (blocker.isReleasable()) {
+        return;
+      }
+    }
+    boolean interrupted = false;
+    while (!blocker.isReleasable()) {
+      try {
+        ForkJoinPool.managedBlock(blocker);
+      } catch (final InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Shuts down the pool.
+   */
+  void shutdown() {
+    pool.shutdown();
+  }
+}
@@ -0,0 +1,299 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package apgas.impl;
+
+import java.io.PrintStream;
+import java.lang.invoke.SerializedLambda;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import apgas.Configuration;
+
+/**
+ * The {@link SerializationProfiler} class records the serialized size and the
+ * encoding and decoding times of the functions of remote tasks.
+ * <p>
+ * Profiling is enabled with {@link Configuration#APGAS_PROFILE_SERIALIZATION}
+ * and only applies to Kryo serialization. Statistics are aggregated per place,
+ * and per lambda implementation method or per class for other functions, so
+ * that places sharing a JVM keep separate statistics. They are dumped to
+ * {@code System.err} for each place when its JVM exits, or on demand with
+ * {@link #dump(PrintStream)}, e.g.:
+ *
+ * <pre>
+ * broadcast(places(), () -&gt; SerializationProfiler.dump(System.err));
+ * </pre>
+ */
+public final class SerializationProfiler {
+  /**
+   * True if profiling is enabled.
+   */
+  static final boolean enabled = Boolean
+      .getBoolean(Configuration.APGAS_PROFILE_SERIALIZATION);
+
+  /**
+   * The number of exact buckets and the number of sub-buckets per power of two
+   * above that in the size histograms.
+   */
+  private static final int EXACT = 16;
+  private static final int SUB = 8;
+
+  /**
+   * The labels indexed by function class.
+   */
+  private static final Map<Class<?>, String> labels = new ConcurrentHashMap<>();
+
+  /**
+   * The global runtime instance of the profiled place.
+   */
+  private final GlobalRuntimeImpl runtime;
+
+  /**
+   * The statistics of the place indexed by label.
+   */
+  private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+  /**
+   * Constructs the profiler of a place and schedules the dump of its
+   * statistics upon exit.
+   *
+   * @param runtime
+   *          the global runtime instance of the place
+   */
+  SerializationProfiler(GlobalRuntimeImpl runtime) {
+    this.runtime = runtime;
+    Runtime.getRuntime().addShutdownHook(new Thread(() -> print(System.err)));
+  }
+
+  /**
+   * Returns the profiler of the current place or null if none.
+   */
+  private static SerializationProfiler profiler() {
+    final GlobalRuntimeImpl runtime = GlobalRuntimeImpl.getRuntime();
+    return runtime == null ? null : runtime.profiler;
+  }
+
+  /**
+   * Writes the function of a task.
+   *
+   * @param kryo
+   *          the Kryo instance
+   * @param output
+   *          the output
+   * @param f
+   *          the function
+   */
+  static void write(Kryo kryo, Output output, Object f) {
+    final SerializationProfiler profiler = enabled ? profiler() : null;
+    if (profiler == null) {
+      kryo.writeClassAndObject(output, f);
+      return;
+    }
+    final long start = System.nanoTime();
+    final long total = output.total();
+    kryo.writeClassAndObject(output, f);
+    profiler.stats(f).encoded(output.total() - total,
+        System.nanoTime() - start);
+  }
+
+  /**
+   * Reads the function of a task.
+   *
+   * @param kryo
+   *          the Kryo instance
+   * @param input
+   *          the input
+   * @return the function
+   */
+  static Object read(Kryo kryo, Input input) {
+    final SerializationProfiler profiler = enabled ? profiler() : null;
+    if (profiler == null) {
+      return kryo.readClassAndObject(input);
+    }
+    final long start = System.nanoTime();
+    final long total = input.total();
+    final Object f = kryo.readClassAndObject(input);
+    profiler.stats(f).decoded(input.total() - total,
+        System.nanoTime() - start);
+    return f;
+  }
+
+  /**
+   * Returns the statistics for a function.
+   */
+  private Stats stats(Object f) {
+    final String label = f == null ? "null"
+        : labels.computeIfAbsent(f.getClass(), c -> label(f));
+    return stats.computeIfAbsent(label, l -> new Stats());
+  }
+
+  /**
+   * Returns the implementation method of a lambda or the class name of other
+   * functions.
+   */
+  private static String label(Object f) {
+    final Class<?> type = f.getClass();
+    if (type.isSynthetic()) {
+      try {
+        final Method writeReplace = type.getDeclaredMethod("writeReplace");
+        writeReplace.setAccessible(true);
+        final SerializedLambda lambda = (SerializedLambda) writeReplace
+            .invoke(f);
+        return lambda.getImplClass().replace('/', '.') + "."
+            + lambda.getImplMethodName();
+      } catch (final Exception e) {
+      }
+    }
+    return type.getName();
+  }
+
+  /**
+   * Prints the statistics of the current place ordered by decreasing total
+   * size. Does nothing if profiling is disabled.
+   *
+   * @param out
+   *          the stream to print to
+   */
+  public static void dump(PrintStream out) {
+    final SerializationProfiler profiler = profiler();
+    if (profiler != null) {
+      profiler.print(out);
+    }
+  }
+
+  /**
+   * Discards the statistics of the current place.
+   */
+  public static void reset() {
+    final SerializationProfiler profiler = profiler();
+    if (profiler != null) {
+      profiler.stats.clear();
+    }
+  }
+
+  /**
+   * Prints the statistics of this profiler ordered by decreasing total size.
+   *
+   * @param out
+   *          the stream to print to
+   */
+  private void print(PrintStream out) {
+    final ArrayList<Map.Entry<String, Stats>> entries = new ArrayList<>(
+        stats.entrySet());
+    entries.sort((a, b) -> Long.compare(b.getValue().bytes(),
+        a.getValue().bytes()));
+    final StringBuilder sb = new StringBuilder();
+    sb.append("[APGAS] Serialization profile at place ").append(runtime.here);
+    sb.append(String.format("%n%10s %12s %10s %10s %10s %12s %10s %10s  %s%n",
+        "sent", "sent bytes", "p99 bytes", "encode us", "received",
+        "recv bytes", "p99 bytes", "decode us", "function"));
+    for (final Map.Entry<String, Stats> entry : entries) {
+      final Stats s = entry.getValue();
+      sb.append(String.format("%10d %12d %10d %10d %10d %12d %10d %10d  %s%n",
+          s.sent.sum(), s.sentBytes.sum(), percentile(s.sentSizes, 0.99),
+          s.encodeNanos.sum() / 1000, s.received.sum(),
+          s.receivedBytes.sum(), percentile(s.receivedSizes, 0.99),
+          s.decodeNanos.sum() / 1000, entry.getKey()));
+    }
+    out.print(sb);
+  }
+
+  /**
+   * Returns the histogram bucket of a size.
+   */
+  static int bucket(long size) {
+    if (size < EXACT) {
+      return (int) size;
+    }
+    final int msb = 63 - Long.numberOfLeadingZeros(size);
+    return EXACT + (msb - 4) * SUB + (int) (size >>> (msb - 3)) - SUB;
+  }
+
+  /**
+   * Returns the largest size in a histogram bucket.
+   */
+  static long limit(int bucket) {
+    if (bucket < EXACT) {
+      return bucket;
+    }
+    final int msb = (bucket - EXACT) / SUB + 4;
+    final long sub = (bucket - EXACT) % SUB + SUB;
+    return ((sub + 1) << (msb - 3)) - 1;
+  }
+
+  /**
+   * Returns an upper bound of the given percentile of the sizes in a
+   * histogram.
+   */
+  static long percentile(AtomicLongArray sizes, double p) {
+    long count = 0;
+    for (int i = 0; i < sizes.length(); i++) {
+      count += sizes.get(i);
+    }
+    final long rank = (long) Math.ceil(p * count);
+    long seen = 0;
+    for (int i = 0; i < sizes.length(); i++) {
+      seen += sizes.get(i);
+      if (seen >= rank && seen > 0) {
+        return limit(i);
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * The statistics of a function. Messages sent and received are kept apart,
+   * as a function may be both sent and received at a place.
+   */
+  private static final class Stats {
+    final LongAdder sent = new LongAdder();
+    final LongAdder sentBytes = new LongAdder();
+    final LongAdder encodeNanos = new LongAdder();
+    final LongAdder received = new LongAdder();
+    final LongAdder receivedBytes = new LongAdder();
+    final LongAdder decodeNanos = new LongAdder();
+    final AtomicLongArray sentSizes = new AtomicLongArray(
+        bucket(Long.MAX_VALUE) + 1);
+    final AtomicLongArray receivedSizes = new AtomicLongArray(
+        bucket(Long.MAX_VALUE) + 1);
+
+    void encoded(long bytes, long nanos) {
+      sent.increment();
+      sentBytes.add(bytes);
+      encodeNanos.add(nanos);
+      sentSizes.incrementAndGet(bucket(bytes));
+    }
+
+    void decoded(long bytes, long nanos) {
+      received.increment();
+      receivedBytes.add(bytes);
+      decodeNanos.add(nanos);
+      receivedSizes.incrementAndGet(bucket(bytes));
+    }
+
+    /**
+     * Returns the total number of bytes sent and received. Only used to order
+     * the functions.
+     */
+    long bytes() {
+      return sentBytes.sum() + receivedBytes.sum();
+    }
+  }
+}
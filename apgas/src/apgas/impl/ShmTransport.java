@@ -0,0 +1,581 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package apgas.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import apgas.DeadPlaceException;
+
+/**
+ * The {@link ShmTransport} class implements active messages between places
+ * running on the same host using shared memory.
+ * <p>
+ * Each pair of co-located places communicates through a memory-mapped ring
+ * buffer in {@code /dev/shm} per direction, which is a queue of
+ * length-prefixed frames written without locks by any thread of the sending
+ * place and read by the polling thread of the receiving place. The ring is
+ * created by the sending place upon the first message and announced to the
+ * receiving place over TCP. The sending place keeps using TCP until the
+ * receiving place acknowledges the mapping of the ring. A polling thread
+ * drains the incoming rings and hands the tasks directly to the pool of the
+ * global runtime. With {@link Config#APGAS_TRANSPORT_CREDITS} set, frames
+ * written to a ring hold credits like frames written to a socket and the
+ * polling thread grants them back over TCP.
+ * <p>
+ * Places on other hosts, places that fail to map the ring, frames that do not
+ * fit in the ring, and systems without {@code /dev/shm} fall back to
+ * {@link NioTransport}.
+ */
+public class ShmTransport extends NioTransport {
+  private static String APGAS_SHM = "apgas:shm";
+
+  /**
+   * The directory holding the ring buffer files.
+   */
+  private static final File SHM = new File("/dev/shm");
+
+  /**
+   * Number of empty polls before the polling thread starts parking.
+   * <p>
+   * Spinning only steals cycles from the producers on a single core.
+   */
+  private static final int SPINS = Runtime.getRuntime()
+      .availableProcessors() > 1 ? 100 : 0;
+
+  /**
+   * Initial park duration in nanoseconds of an idle polling thread.
+   */
+  private static final long PARK = 50000;
+
+  /**
+   * Maximal park duration in nanoseconds of an idle polling thread.
+   * <p>
+   * The park duration doubles with every empty poll up to this bound, so that
+   * idle places wake up about a thousand times per second instead of twenty
+   * thousand times.
+   */
+  private static final long MAX_PARK = 1000000;
+
+  /**
+   * The {@code getLongVolatile(Object, long)} method of
+   * {@code sun.misc.Unsafe}.
+   */
+  private static final MethodHandle GET_LONG_VOLATILE;
+
+  /**
+   * The {@code putOrderedLong(Object, long, long)} method of
+   * {@code sun.misc.Unsafe}.
+   */
+  private static final MethodHandle PUT_ORDERED_LONG;
+
+  /**
+   * The {@code getLong(Object, long)} method of {@code sun.misc.Unsafe}.
+   */
+  private static final MethodHandle GET_LONG;
+
+  /**
+   * The offset of the address field of direct buffers.
+   */
+  private static final long ADDRESS;
+
+  static {
+    // sun.misc.Unsafe is looked up reflectively as it is not a public API
+    try {
+      final Class<?> type = Class.forName("sun.misc.Unsafe");
+      final Field f = type.getDeclaredField("theUnsafe");
+      f.setAccessible(true);
+      final Object unsafe = f.get(null);
+      final MethodHandles.Lookup lookup = MethodHandles.lookup();
+      GET_LONG_VOLATILE = lookup.findVirtual(type, "getLongVolatile",
+          MethodType.methodType(long.class, Object.class, long.class))
+          .bindTo(unsafe);
+      PUT_ORDERED_LONG = lookup.findVirtual(type, "putOrderedLong",
+          MethodType.methodType(void.class, Object.class, long.class,
+              long.class))
+          .bindTo(unsafe);
+      GET_LONG = lookup.findVirtual(type, "getLong",
+          MethodType.methodType(long.class, Object.class, long.class))
+          .bindTo(unsafe);
+      ADDRESS = (long) lookup
+          .findVirtual(type, "objectFieldOffset",
+              MethodType.methodType(long.class, Field.class))
+          .invoke(unsafe, Buffer.class.getDeclaredField("address"));
+    } catch (final Throwable e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  /**
+   * The global runtime instance.
+   */
+  private final GlobalRuntimeImpl runtime;
+
+  /**
+   * The capacity of each ring in bytes.
+   */
+  private final int capacity;
+
+  /**
+   * The host part of the socket address of this place.
+   */
+  private final String host;
+
+  /**
+   * The outgoing rings indexed by place ID.
+   */
+  private final Map<Integer, Ring> outbound = new ConcurrentHashMap<>();
+
+  /**
+   * The outgoing rings announced but not acknowledged yet indexed by place ID.
+   * Guarded by {@link #outbound}.
+   */
+  private final Map<Integer, Ring> announced = new ConcurrentHashMap<>();
+
+  /**
+   * The places known not to be reachable via shared memory.
+   */
+  private final Map<Integer, Boolean> remote = new ConcurrentHashMap<>();
+
+  /**
+   * The incoming rings.
+   */
+  private final List<Ring> inbound = new CopyOnWriteArrayList<>();
+
+  /**
+   * The polling thread.
+   */
+  private final Thread poller;
+
+  /**
+   * False once shutdown is in progress.
+   */
+  private volatile boolean running = true;
+
+  /**
+   * Initializes the {@link ShmTransport} for this global runtime instance.
+   *
+   * @param runtime
+   *          the global runtime instance
+   * @param master
+   *          member to connect to or null
+   * @param localhost
+   *          the preferred ip address of this host or null
+   * @param compact
+   *          reduces thread creation if set
+   * @param kryo
+   *          use kryo serialization if set
+   * @throws IOException
+   *           if the server socket cannot be opened
+   */
+  public ShmTransport(GlobalRuntimeImpl runtime, String master,
+      String localhost, boolean compact, boolean kryo) throws IOException {
+    super(runtime, master, localhost, compact, kryo);
+    this.runtime = runtime;
+    capacity = Integer.highestOneBit(
+        Integer.getInteger(Config.APGAS_TRANSPORT_SHM_SIZE, 4 << 20));
+    host = address(here()).split(":")[0];
+    poller = new Thread(this::poll, APGAS_SHM);
+    poller.setDaemon(true);
+  }
+
+  @Override
+  protected synchronized void start() {
+    super.start();
+    poller.start();
+  }
+
+  @Override
+  protected synchronized void shutdown() {
+    running = false;
+    LockSupport.unpark(poller);
+    try {
+      poller.join();
+    } catch (final InterruptedException e) {
+    }
+    super.shutdown();
+  }
+
+  @Override
+  boolean mayBlock() {
+    return Thread.currentThread() != poller && super.mayBlock();
+  }
+
+  @Override
+  void write(int place, ByteBuffer frame, SerializableRunnable message)
+      throws IOException {
+    final Ring ring = ring(place);
+    if (ring == null) {
+      super.write(place, frame, message);
+      return;
+    }
+    // ring frames hold credits like socket frames, the reader grants them back
+    acquire(place, frame.remaining());
+    if (!ring.offer(frame)) {
+      post(place, false, frame, message);
+    }
+  }
+
+  /**
+   * Returns the outgoing ring to the given place, creating and announcing it
+   * if necessary.
+   *
+   * @param place
+   *          a place ID
+   * @return the ring or null if the place is not reachable via shared memory
+   *         or has not acknowledged the ring yet
+   */
+  private Ring ring(int place) {
+    final Ring ring = outbound.get(place);
+    if (ring != null || remote.containsKey(place)
+        || announced.containsKey(place)) {
+      return ring;
+    }
+    synchronized (outbound) {
+      Ring r = outbound.get(place);
+      if (r != null || remote.containsKey(place)
+          || announced.containsKey(place)) {
+        return r;
+      }
+      if (!SHM.isDirectory() || !host.equals(address(place).split(":")[0])) {
+        remote.put(place, true);
+        return null;
+      }
+      final File file = new File(SHM, "apgas-"
+          + hazelcast.getCluster().getLocalMember().getUuid() + "-" + place);
+      try {
+        r = new Ring(file, capacity, null);
+      } catch (final IOException e) {
+        remote.put(place, true);
+        return null;
+      }
+      file.deleteOnExit();
+      final String path = file.getPath();
+      final int capacity = this.capacity;
+      final int from = here();
+      announced.put(place, r);
+      try {
+        sendControl(place, () -> ((ShmTransport) GlobalRuntimeImpl
+            .getRuntime().transport).attach(path, capacity, from));
+      } catch (final DeadPlaceException e) {
+        announced.remove(place);
+        remote.put(place, true);
+        file.delete();
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Maps an incoming ring announced by a co-located place and acknowledges
+   * the outcome to this place.
+   *
+   * @param path
+   *          the ring buffer file
+   * @param capacity
+   *          the capacity of the ring in bytes
+   * @param from
+   *          the ID of the place writing to the ring
+   */
+  private void attach(String path, int capacity, int from) {
+    final File file = new File(path);
+    boolean mapped = false;
+    try {
+      inbound.add(new Ring(file, capacity, new Inbound(from)));
+      mapped = true;
+    } catch (final IOException e) {
+      System.err.println("[APGAS] Unable to map shared memory ring " + path
+          + " at place " + runtime.here + " due to: " + e);
+    }
+    file.delete();
+    LockSupport.unpark(poller);
+    final int to = here();
+    final boolean ok = mapped;
+    try {
+      sendControl(from, () -> ((ShmTransport) GlobalRuntimeImpl
+          .getRuntime().transport).attached(to, ok));
+    } catch (final DeadPlaceException e) {
+      // the announcing place is gone
+    }
+  }
+
+  /**
+   * Enables or discards the outgoing ring to the given place once the place
+   * has answered the announcement of the ring.
+   *
+   * @param place
+   *          the ID of the place reading from the ring
+   * @param mapped
+   *          true if the place has mapped the ring
+   */
+  private void attached(int place, boolean mapped) {
+    synchronized (outbound) {
+      final Ring ring = announced.remove(place);
+      if (ring == null) {
+        return;
+      }
+      if (mapped) {
+        outbound.put(place, ring);
+      } else {
+        remote.put(place, true);
+      }
+    }
+  }
+
+  /**
+   * The polling loop.
+   */
+  private void poll() {
+    byte[] bytes = new byte[4096];
+    int idle = 0;
+    long park = PARK;
+    while (running) {
+      boolean progress = false;
+      for (final Ring ring : inbound) {
+        long head = ring.head();
+        final long tail = ring.tail();
+        if (head == tail) {
+          continue;
+        }
+        progress = true;
+        while (head < tail) {
+          final int length = ring.getInt(head);
+          if (length > bytes.length) {
+            bytes = new byte[Math.max(length, 2 * bytes.length)];
+          }
+          ring.get(head + 4, bytes, length);
+          head += 4 + length;
+          ring.head(head);
+          dispatch(bytes, 0, length);
+          if (credits > 0) {
+            consumed(ring.source, length + 4);
+          }
+        }
+      }
+      if (progress) {
+        idle = 0;
+        park = PARK;
+      } else if (++idle < SPINS) {
+        Thread.yield();
+      } else {
+        LockSupport.parkNanos(this, park);
+        park = Math.min(2 * park, MAX_PARK);
+      }
+    }
+  }
+
+  private static long getLongVolatile(long address) {
+    try {
+      return (long) GET_LONG_VOLATILE.invokeExact((Object) null, address);
+    } catch (final Throwable e) {
+      throw new InternalError(e);
+    }
+  }
+
+  private static void putOrderedLong(long address, long value) {
+    try {
+      PUT_ORDERED_LONG.invokeExact((Object) null, address, value);
+    } catch (final Throwable e) {
+      throw new InternalError(e);
+    }
+  }
+
+  private static long getLong(Object object, long offset) {
+    try {
+      return (long) GET_LONG.invokeExact(object, offset);
+    } catch (final Throwable e) {
+      throw new InternalError(e);
+    }
+  }
+
+  /**
+   * The {@link Ring} class implements a multiple producer, single consumer ring
+   * buffer of frames in a memory-mapped file.
+   * <p>
+   * The producer and consumer positions are monotonically increasing byte
+   * counts stored in the file header on separate cache lines. Frames may wrap
+   * around the end of the data area.
+   * <p>
+   * Producers reserve room for a frame by advancing {@link #reserved} with a
+   * CAS, copy the frame without synchronization, and publish it by advancing
+   * the producer position in reservation order.
+   */
+  private static final class Ring {
+    private static final int HEAD = 0;
+    private static final int TAIL = 64;
+    private static final int DATA = 128;
+
+    /**
+     * The mapped file. Keeps the mapping alive.
+     */
+    private final MappedByteBuffer buffer;
+
+    /**
+     * A view of the data area.
+     */
+    private final ByteBuffer data;
+
+    /**
+     * The address of the mapped file.
+     */
+    private final long address;
+
+    /**
+     * The capacity of the data area, a power of two.
+     */
+    private final int capacity;
+
+    /**
+     * The credit accounting of an incoming ring or null for an outgoing ring.
+     */
+    final Inbound source;
+
+    /**
+     * The end of the last reserved frame. Only used by the producers.
+     */
+    private final AtomicLong reserved;
+
+    /**
+     * Maps a ring buffer file, creating it if necessary.
+     *
+     * @param file
+     *          the file
+     * @param capacity
+     *          the capacity of the data area
+     * @param source
+     *          the credit accounting of an incoming ring or null
+     * @throws IOException
+     *           if the file cannot be mapped
+     */
+    Ring(File file, int capacity, Inbound source) throws IOException {
+      this.capacity = capacity;
+      this.source = source;
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+        buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+            DATA + capacity);
+      }
+      address = getLong(buffer, ADDRESS);
+      buffer.position(DATA);
+      data = buffer.slice();
+      reserved = new AtomicLong(tail());
+    }
+
+    long head() {
+      return getLongVolatile(address + HEAD);
+    }
+
+    void head(long head) {
+      putOrderedLong(address + HEAD, head);
+    }
+
+    long tail() {
+      return getLongVolatile(address + TAIL);
+    }
+
+    /**
+     * Appends a frame to the ring if there is enough room. Invoked by the
+     * producers only.
+     * <p>
+     * Waits for the frames reserved earlier to be published, which only takes
+     * as long as copying them.
+     *
+     * @param frame
+     *          the frame
+     * @return true if the frame was appended
+     */
+    boolean offer(ByteBuffer frame) {
+      final int length = frame.remaining();
+      long tail;
+      do {
+        tail = reserved.get();
+        if (capacity - (tail - head()) < length) {
+          return false;
+        }
+      } while (!reserved.compareAndSet(tail, tail + length));
+      final int index = (int) (tail & (capacity - 1));
+      final int first = Math.min(length, capacity - index);
+      final int limit = frame.limit();
+      // the position of the shared view is not thread-safe
+      final ByteBuffer data = this.data.duplicate();
+      data.position(index);
+      frame.limit(frame.position() + first);
+      data.put(frame);
+      frame.limit(limit);
+      if (first < length) {
+        data.position(0);
+        data.put(frame);
+      }
+      while (tail() != tail) {
+        Thread.yield();
+      }
+      putOrderedLong(address + TAIL, tail + length);
+      return true;
+    }
+
+    /**
+     * Reads the frame length at the given position. Invoked by the consumer
+     * only.
+     *
+     * @param position
+     *          the position of the frame
+     * @return the length of the frame payload
+     */
+    int getInt(long position) {
+      final int index = (int) (position & (capacity - 1));
+      if (index + 4 <= capacity) {
+        return data.getInt(index);
+      }
+      int value = 0;
+      for (int i = 0; i < 4; i++) {
+        value = (value << 8)
+            | data.get((int) ((position + i) & (capacity - 1))) & 0xff;
+      }
+      return value;
+    }
+
+    /**
+     * Copies bytes out of the ring. Invoked by the consumer only.
+     *
+     * @param position
+     *          the position of the first byte
+     * @param bytes
+     *          the destination array
+     * @param length
+     *          the number of bytes to copy
+     */
+    void get(long position, byte[] bytes, int length) {
+      final int index = (int) (position & (capacity - 1));
+      final int first = Math.min(length, capacity - index);
+      data.position(index);
+      data.get(bytes, 0, first);
+      if (first < length) {
+        data.position(0);
+        data.get(bytes, first, length - first);
+      }
+    }
+  }
+}
@@ -14,7 +14,6 @@ package apgas.impl;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
-import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.RecursiveAction;
 
@@ -25,19 +24,31 @@ import com.esotericsoftware.kryo.io.Output;
 
 import apgas.DeadPlaceException;
 import apgas.Job;
+import apgas.Place;
 import apgas.SerializableJob;
+import apgas.util.GlobalID;
 
 /**
  * The {@link Task} class represents an APGAS task.
  *
  * <p>
  * This class implements task serialization and handles errors in the
- * serialization process.
+ * serialization process. The serialized form of a task starts with a compact
+ * header: a byte for the kind of finish, the home place and local ID of a
+ * {@link DefaultFinish}, and the place of the parent task. Other finish objects
+ * are serialized as objects.
  */
 final class Task extends RecursiveAction
     implements SerializableRunnable, KryoSerializable {
   private static final long serialVersionUID = 5288338719050788305L;
 
+  /**
+   * The kinds of finish objects in the serialized form of a task.
+   */
+  private static final int NULL_FINISH = 0;
+  private static final int DEFAULT_FINISH = 1;
+  private static final int OTHER_FINISH = 2;
+
   /**
    * The finish object for this {@link Task} instance.
    */
@@ -86,14 +97,17 @@ final class Task extends RecursiveAction
    */
   @Override
   protected void compute() {
-    final Worker worker = (Worker) Thread.currentThread();
-    worker.task = this;
+    Worker.setTask(this);
     try {
       f.run();
     } catch (final Throwable t) {
       finish.addSuppressed(t);
     }
     finish.tell();
+    if (getQueuedTaskCount() == 0) {
+      // worker is about to go idle
+      GlobalRuntimeImpl.getRuntime().transport.flush();
+    }
   }
 
   /**
@@ -104,29 +118,68 @@ final class Task extends RecursiveAction
    *          the worker thread running the task or null if not a worker thread
    */
   void finish(Worker worker) {
-    if (worker == null) {
+    final GlobalRuntimeImpl runtime = GlobalRuntimeImpl.getRuntime();
+    if (worker == null && !runtime.scheduler.isVirtual()) {
       async(worker);
-      try {
-        ForkJoinPool.managedBlock(finish);
-      } catch (final InterruptedException e) {
-      }
+      runtime.transport.flush();
+      runtime.scheduler.block(finish);
     } else {
-      final Task savedTask = worker.task;
+      // a virtual thread runs the task inline and unmounts while blocked
+      final Task savedTask = Worker.getTask();
       compute();
-      Task t;
-      while (!finish.isReleasable()
-          && (t = (Task) ForkJoinTask.peekNextLocalTask()) != null
-          && finish == t.finish && t.tryUnfork()) {
-        t.compute();
+      if (worker != null && runtime.scheduler.helpDepth > 0) {
+        help(worker, runtime);
+      } else {
+        ForkJoinTask<?> t;
+        while (worker != null && !finish.isReleasable()
+            && (t = ForkJoinTask.peekNextLocalTask()) instanceof Task
+            && finish == ((Task) t).finish && t.tryUnfork()) {
+          ((Task) t).compute();
+        }
       }
-      try {
-        ForkJoinPool.managedBlock(finish);
-      } catch (final InterruptedException e) {
+      if (!finish.isReleasable()) {
+        runtime.transport.flush();
       }
-      worker.task = savedTask;
+      runtime.scheduler.block(finish);
+      Worker.setTask(savedTask);
     }
   }
 
+  /**
+   * Runs pending tasks on the worker until the task's finish is releasable.
+   * Only used if {@link Config#APGAS_FINISH_HELP_DEPTH} is set.
+   * <p>
+   * Runs the local tasks of the worker first, then tasks stolen from other
+   * workers, whichever finish they belong to. Flushes the transport before
+   * running a task of another finish. Gives up if the worker is already
+   * helping in {@link Scheduler#helpDepth} nested finishes to bound the stack
+   * depth.
+   * <p>
+   * A task of another finish run here delays this task until it returns. See
+   * {@link Config#APGAS_FINISH_HELP_DEPTH} for the resulting hazard.
+   *
+   * @param worker
+   *          the worker thread running the task
+   * @param runtime
+   *          the global runtime instance of the task
+   */
+  private void help(Worker worker, GlobalRuntimeImpl runtime) {
+    if (worker.depth >= runtime.scheduler.helpDepth) {
+      return;
+    }
+    worker.depth++;
+    boolean flushed = false;
+    ForkJoinTask<?> t;
+    while (!finish.isReleasable() && (t = pollTask()) != null) {
+      if (!flushed && !(t instanceof Task && ((Task) t).finish == finish)) {
+        runtime.transport.flush();
+        flushed = true;
+      }
+      t.quietlyInvoke();
+    }
+    worker.depth--;
+  }
+
   /**
    * Submits the task for asynchronous execution.
    *
@@ -166,6 +219,36 @@ final class Task extends RecursiveAction
     }
   }
 
+  /**
+   * Reports the failure to send the task to place p after
+   * {@link #asyncAt(int)} has returned.
+   * <p>
+   * Runs a local task in the same finish that retracts the spawn at place p
+   * and rethrows the exception, so that the finish is notified as if the
+   * failure had occurred in {@link #asyncAt(int)}.
+   *
+   * @param p
+   *          the place ID
+   * @param e
+   *          the exception
+   */
+  void failedAt(int p, Throwable e) {
+    final GlobalRuntimeImpl runtime = GlobalRuntimeImpl.getRuntime();
+    if (runtime.verboseSerialization && !(e instanceof DeadPlaceException)) {
+      System.err.println(
+          "[APGAS] Failed to spawn a task at place " + p + " due to: " + e);
+    }
+    final Finish finish = this.finish;
+    finish.spawn(runtime.here);
+    new Task(finish, () -> {
+      finish.unspawn(p);
+      if (e instanceof Exception) {
+        throw (Exception) e;
+      }
+      throw (Error) e;
+    }, runtime.here).async(null);
+  }
+
   /**
    * Serializes the task.
    *
@@ -176,11 +259,29 @@ final class Task extends RecursiveAction
    *           if I/O errors occur
    */
   private void writeObject(ObjectOutputStream out) throws IOException {
-    out.writeObject(finish);
+    if (finish instanceof DefaultFinish) {
+      final GlobalID id = id((DefaultFinish) finish);
+      out.writeByte(DEFAULT_FINISH);
+      out.writeInt(id.home.id);
+      out.writeInt(id.lid);
+    } else if (finish == NullFinish.SINGLETON) {
+      out.writeByte(NULL_FINISH);
+    } else {
+      out.writeByte(OTHER_FINISH);
+      out.writeObject(finish);
+    }
     out.writeInt(parent);
     out.writeObject(f);
   }
 
+  /**
+   * Returns the {@link GlobalID} of a finish object, allocating it if needed.
+   */
+  private static GlobalID id(DefaultFinish finish) {
+    finish.writeReplace();
+    return finish.id;
+  }
+
   private static final SerializableJob NULL = () -> {
   };
 
@@ -200,7 +301,17 @@ final class Task extends RecursiveAction
    */
   private void readObject(ObjectInputStream in)
       throws IOException, ClassNotFoundException {
-    finish = (Finish) in.readObject();
+    switch (in.readByte()) {
+    case DEFAULT_FINISH:
+      final Place home = new Place(in.readInt());
+      finish = DefaultFinish.resolve(new GlobalID(home, in.readInt()));
+      break;
+    case NULL_FINISH:
+      finish = NullFinish.SINGLETON;
+      break;
+    default:
+      finish = (Finish) in.readObject();
+    }
     parent = in.readInt();
     try {
       f = (SerializableJob) in.readObject();
@@ -217,17 +328,38 @@ final class Task extends RecursiveAction
 
   @Override
   public void write(Kryo kryo, Output output) {
-    kryo.writeClassAndObject(output, finish);
-    output.writeInt(parent);
-    kryo.writeClassAndObject(output, f);
+    if (finish instanceof DefaultFinish) {
+      final GlobalID id = id((DefaultFinish) finish);
+      output.writeByte(DEFAULT_FINISH);
+      output.writeVarInt(id.home.id, true);
+      output.writeVarInt(id.lid, true);
+    } else if (finish == NullFinish.SINGLETON) {
+      output.writeByte(NULL_FINISH);
+    } else {
+      output.writeByte(OTHER_FINISH);
+      kryo.writeClassAndObject(output, finish);
+    }
+    output.writeVarInt(parent, true);
+    SerializationProfiler.write(kryo, output, f);
   }
 
   @Override
   public void read(Kryo kryo, Input input) {
-    finish = (Finish) kryo.readClassAndObject(input);
-    parent = input.readInt();
+    switch (input.readByte()) {
+    case DEFAULT_FINISH:
+      final Place home = new Place(input.readVarInt(true));
+      finish = DefaultFinish
+          .resolve(new GlobalID(home, input.readVarInt(true)));
+      break;
+    case NULL_FINISH:
+      finish = NullFinish.SINGLETON;
+      break;
+    default:
+      finish = (Finish) kryo.readClassAndObject(input);
+    }
+    parent = input.readVarInt(true);
     try {
-      f = (Job) kryo.readClassAndObject(input);
+      f = (Job) SerializationProfiler.read(kryo, input);
     } catch (final Throwable e) {
       if (GlobalRuntimeImpl.getRuntime().verboseSerialization
           && !(e instanceof DeadPlaceException)) {
@@ -11,19 +11,30 @@
 
 package apgas.impl;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.io.UnsafeInput;
+import com.esotericsoftware.kryo.io.UnsafeOutput;
 import com.hazelcast.config.Config;
 import com.hazelcast.config.ExecutorConfig;
 import com.hazelcast.config.InMemoryFormat;
 import com.hazelcast.config.JoinConfig;
 import com.hazelcast.config.MapConfig;
 import com.hazelcast.config.SerializerConfig;
+import com.hazelcast.config.ServiceConfig;
 import com.hazelcast.core.Hazelcast;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.IExecutorService;
@@ -35,7 +46,13 @@ import com.hazelcast.core.ItemEvent;
 import com.hazelcast.core.Member;
 import com.hazelcast.core.MemberAttributeEvent;
 import com.hazelcast.core.MembershipEvent;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
 import com.hazelcast.spi.ExecutionService;
+import com.hazelcast.spi.ManagedService;
+import com.hazelcast.spi.NodeEngine;
+import com.hazelcast.spi.Operation;
+import com.hazelcast.spi.OperationService;
 
 import apgas.DeadPlaceException;
 import apgas.Place;
@@ -43,6 +60,15 @@ import apgas.Place;
 /**
  * The {@link Transport} class manages the Hazelcast cluster and implements
  * active messages.
+ * <p>
+ * Active messages are delivered to a Hazelcast executor service, whose
+ * threads submit the tasks to the pool of the global runtime. If
+ * {@link apgas.impl.Config#APGAS_TRANSPORT_DIRECT} is set, active messages are
+ * instead sent as Hazelcast operations if a connection to the destination
+ * member is open. The operation thread of the destination member then decodes
+ * the task and pushes it into the pool directly. Unlike the executor service,
+ * this path does not report the loss of a message written to a connection
+ * that fails before delivery.
  */
 public class Transport implements com.hazelcast.core.ItemListener<Member>,
     InitialMembershipListener {
@@ -50,6 +76,7 @@ public class Transport implements com.hazelcast.core.ItemListener<Member>,
   private static String APGAS_PLACES = "apgas:places";
   private static String APGAS_EXECUTOR = "apgas:executor";
   private static String APGAS_FINISH = "apgas:finish";
+  private static String APGAS_DELIVERY = "apgas:delivery";
 
   /**
    * The Hazelcast instance for this JVM.
@@ -100,11 +127,33 @@ public class Transport implements com.hazelcast.core.ItemListener<Member>,
    */
   private final IExecutorService executor;
 
+  /**
+   * Operation service for sending active messages if enabled.
+   */
+  private final OperationService operations;
+
   /**
    * The global runtime instance to notify of new and dead places.
    */
   private final GlobalRuntimeImpl runtime;
 
+  /**
+   * True if messages are serialized with Kryo.
+   */
+  protected final boolean kryo;
+
+  /**
+   * The capacity above which the buffer of {@link #serialize(Object)} is not
+   * retained after use.
+   */
+  private static final int MAX_RETAINED_SIZE = 1 << 20;
+
+  /**
+   * The per-thread buffer of {@link #serialize(Object)}.
+   */
+  private static final ThreadLocal<Output> output = ThreadLocal
+      .withInitial(() -> new UnsafeOutput(4096, -1));
+
   /**
    * Initializes the {@link HazelcastInstance} for this global runtime instance.
    *
@@ -122,6 +171,7 @@ public class Transport implements com.hazelcast.core.ItemListener<Member>,
   protected Transport(GlobalRuntimeImpl runtime, String master,
       String localhost, boolean compact, boolean kryo) {
     this.runtime = runtime;
+    this.kryo = kryo;
     // config
     final Config config = new Config();
     config.setProperty("hazelcast.logging.type", "none");
@@ -151,6 +201,11 @@ public class Transport implements com.hazelcast.core.ItemListener<Member>,
     config.addMapConfig(
         new MapConfig(APGAS_FINISH).setInMemoryFormat(InMemoryFormat.OBJECT));
 
+    // delivery service
+    final Delivery delivery = new Delivery();
+    config.getServicesConfig().addServiceConfig(new ServiceConfig()
+        .setEnabled(true).setName(APGAS_DELIVERY).setImplementation(delivery));
+
     // join config
     final JoinConfig join = config.getNetworkConfig().getJoin();
     join.getMulticastConfig().setEnabled(false);
@@ -178,6 +233,103 @@ public class Transport implements com.hazelcast.core.ItemListener<Member>,
     here = id;
 
     executor = hazelcast.getExecutorService(APGAS_EXECUTOR);
+    operations = Boolean.getBoolean(apgas.impl.Config.APGAS_TRANSPORT_DIRECT)
+        ? delivery.nodeEngine.getOperationService() : null;
+  }
+
+  /**
+   * Initializes a transport that does not join a Hazelcast cluster.
+   * <p>
+   * Subclasses using this constructor must override the methods of this class
+   * that depend on the cluster.
+   *
+   * @param runtime
+   *          the global runtime instance
+   * @param kryo
+   *          use kryo serialization if set
+   */
+  protected Transport(GlobalRuntimeImpl runtime, boolean kryo) {
+    this.runtime = runtime;
+    this.kryo = kryo;
+    hazelcast = null;
+    me = null;
+    allMembers = null;
+    executor = null;
+    operations = null;
+    here = -1;
+  }
+
+  /**
+   * Returns the Kryo instance of the current thread configured for APGAS.
+   *
+   * @return the Kryo instance
+   */
+  protected static Kryo getKryo() {
+    return KryoSerializer.kryoThreadLocal.get();
+  }
+
+  /**
+   * Records the destination of the messages serialized by the current thread
+   * so that Kryo only writes class IDs the destination can decode.
+   *
+   * @param place
+   *          the ID of the destination place or -1 if unknown
+   * @return the previous destination, to be restored after serialization
+   */
+  protected int setDestination(int place) {
+    return kryo ? ClassRegistry.destination(getKryo(), place) : -1;
+  }
+
+  /**
+   * Serializes an object with the serialization framework of this transport.
+   *
+   * @param object
+   *          the object to serialize
+   * @return the serialized object
+   */
+  byte[] serialize(Object object) {
+    if (kryo) {
+      // the unsafe streams copy primitive arrays in bulk
+      final Output pooled = Transport.output.get();
+      final Output output = pooled.position() == 0 ? pooled
+          : new UnsafeOutput(4096, -1);
+      try {
+        getKryo().writeClassAndObject(output, object);
+        return output.toBytes();
+      } finally {
+        output.clear();
+        if (output == pooled
+            && output.getBuffer().length > MAX_RETAINED_SIZE) {
+          Transport.output.remove();
+        }
+      }
+    }
+    final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    try (ObjectOutputStream oos = Lambdas.newObjectOutputStream(baos)) {
+      oos.writeObject(object);
+    } catch (final IOException e) {
+      throw new RuntimeException(e);
+    }
+    return baos.toByteArray();
+  }
+
+  /**
+   * Deserializes an object serialized by {@link #serialize(Object)}.
+   *
+   * @param bytes
+   *          the serialized object
+   * @return the object
+   */
+  Object deserialize(byte[] bytes) {
+    if (kryo) {
+      return getKryo().readClassAndObject(new UnsafeInput(bytes));
+    }
+    try (ObjectInputStream ois = new ObjectInputStream(
+        new ByteArrayInputStream(bytes))) {
+      return ois.readObject();
+    } catch (IOException | ClassNotFoundException e) {
+      throw new RuntimeException(e);
+    }
   }
 
   /**
@@ -253,6 +405,17 @@ public class Transport implements com.hazelcast.core.ItemListener<Member>,
     return here;
   }
 
+  /**
+   * Returns true if the cluster contains the given place.
+   *
+   * @param place
+   *          a place ID
+   * @return true if the place is live
+   */
+  protected boolean isLive(int place) {
+    return map.containsKey(place);
+  }
+
   /**
    * Executes a function at the given place.
    *
@@ -271,10 +434,51 @@ public class Transport implements com.hazelcast.core.ItemListener<Member>,
       if (member == null) {
         throw new DeadPlaceException(new Place(place));
       }
-      executor.executeOnMember(f, member);
+      // both paths serialize in this thread
+      final int previous = setDestination(place);
+      try {
+        if (operations != null && operations.send(
+            new Message(f).setServiceName(APGAS_DELIVERY),
+            member.getAddress())) {
+          return;
+        }
+        // no open connection to the member: use the invocation machinery
+        if (!isLive(place)) {
+          throw new DeadPlaceException(new Place(place));
+        }
+        executor.executeOnMember(f, member);
+      } finally {
+        setDestination(previous);
+      }
     }
   }
 
+  /**
+   * Executes a control message at the given place.
+   * <p>
+   * Control messages are small runtime messages such as termination or work
+   * stealing messages. Transports with several lanes deliver them ahead of the
+   * bulk messages. Defaults to {@link #send(int, SerializableRunnable)}.
+   *
+   * @param place
+   *          the requested place of execution
+   * @param f
+   *          the function to execute
+   * @throws DeadPlaceException
+   *           if the cluster does not contain this place
+   */
+  protected void sendControl(int place, SerializableRunnable f) {
+    send(place, f);
+  }
+
+  /**
+   * Writes the messages buffered by this transport if any.
+   * <p>
+   * Invoked when a worker goes idle or blocks. Does nothing by default.
+   */
+  protected void flush() {
+  }
+
   private boolean live(String uuid) {
     for (final Member member : currentMembers) {
       if (uuid.equals(member.getUuid())) {
@@ -349,4 +553,78 @@ public class Transport implements com.hazelcast.core.ItemListener<Member>,
   synchronized public void itemRemoved(ItemEvent<Member> item) {
     // unused
   }
+
+  /**
+   * The Hazelcast service delivering active messages.
+   * <p>
+   * Exposes the node engine of the Hazelcast instance.
+   */
+  private static class Delivery implements ManagedService {
+    /**
+     * The node engine of the Hazelcast instance.
+     */
+    NodeEngine nodeEngine;
+
+    @Override
+    public void init(NodeEngine nodeEngine, Properties properties) {
+      this.nodeEngine = nodeEngine;
+    }
+
+    @Override
+    public void reset() {
+    }
+
+    @Override
+    public void shutdown(boolean terminate) {
+    }
+  }
+
+  /**
+   * An active message sent as a Hazelcast operation.
+   * <p>
+   * The function is decoded and run by the operation thread of the destination
+   * member. Tasks run by submitting themselves to the pool.
+   */
+  public static class Message extends Operation {
+    /**
+     * The function to execute.
+     */
+    private SerializableRunnable f;
+
+    /**
+     * Constructs an empty message for deserialization.
+     */
+    public Message() {
+    }
+
+    /**
+     * Constructs a message.
+     *
+     * @param f
+     *          the function to execute
+     */
+    Message(SerializableRunnable f) {
+      this.f = f;
+    }
+
+    @Override
+    public void run() {
+      f.run();
+    }
+
+    @Override
+    public boolean returnsResponse() {
+      return false;
+    }
+
+    @Override
+    protected void writeInternal(ObjectDataOutput out) throws IOException {
+      out.writeObject(f);
+    }
+
+    @Override
+    protected void readInternal(ObjectDataInput in) throws IOException {
+      f = in.readObject();
+    }
+  }
 }
@@ -60,14 +60,17 @@ final class UncountedTask extends RecursiveAction
   @Override
   protected void compute() {
     try {
-      final Worker worker = (Worker) Thread.currentThread();
-      worker.task = null;
+      Worker.setTask(null);
       f.run();
     } catch (final Throwable t) {
       System.err.println("[APGAS] Uncaught exception in uncounted task");
       System.err.println("[APGAS] Caused by: " + t);
       System.err.println("[APGAS] Ignoring...");
     }
+    if (getQueuedTaskCount() == 0) {
+      // worker is about to go idle
+      GlobalRuntimeImpl.getRuntime().transport.flush();
+    }
   }
 
   /**
@@ -79,10 +82,17 @@ final class UncountedTask extends RecursiveAction
    *
    * @param p
    *          the place ID
+   * @param control
+   *          true to send the task on the control lane of the transport
    */
-  void uncountedAsyncAt(int p) {
+  void uncountedAsyncAt(int p, boolean control) {
     try {
-      GlobalRuntimeImpl.getRuntime().transport.send(p, this);
+      final Transport transport = GlobalRuntimeImpl.getRuntime().transport;
+      if (control) {
+        transport.sendControl(p, this);
+      } else {
+        transport.send(p, this);
+      }
     } catch (final Throwable e) {
       if (GlobalRuntimeImpl.getRuntime().verboseSerialization
           && !(e instanceof DeadPlaceException)) {
@@ -123,13 +133,13 @@ final class UncountedTask extends RecursiveAction
 
   @Override
   public void write(Kryo kryo, Output output) {
-    kryo.writeClassAndObject(output, f);
+    SerializationProfiler.write(kryo, output, f);
   }
 
   @Override
   public void read(Kryo kryo, Input input) {
     try {
-      f = (SerializableJob) kryo.readClassAndObject(input);
+      f = (SerializableJob) SerializationProfiler.read(kryo, input);
     } catch (final Throwable e) {
       System.err.println(
           "[APGAS] Ignoring failure to receive an uncounted task at place "
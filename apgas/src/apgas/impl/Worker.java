@@ -23,13 +23,56 @@ final class Worker extends ForkJoinWorkerThread {
    *
    * @param pool
    *          the pool this worker works in
+   * @param runtime
+   *          the global runtime instance owning the pool
    */
-  protected Worker(ForkJoinPool pool) {
+  protected Worker(ForkJoinPool pool, GlobalRuntimeImpl runtime) {
     super(pool);
+    this.runtime = runtime;
   }
 
+  /**
+   * The global runtime instance this worker is currently acting for.
+   */
+  GlobalRuntimeImpl runtime;
+
   /**
    * The current task.
    */
   Task task;
+
+  /**
+   * The number of nested finishes this worker is helping in.
+   */
+  int depth;
+
+  /**
+   * The current task of threads other than workers, e.g., virtual threads.
+   */
+  private static final ThreadLocal<Task> tasks = new ThreadLocal<>();
+
+  /**
+   * Returns the current task of the current thread.
+   *
+   * @return the current task or null if none
+   */
+  static Task getTask() {
+    final Thread t = currentThread();
+    return t instanceof Worker ? ((Worker) t).task : tasks.get();
+  }
+
+  /**
+   * Sets the current task of the current thread.
+   *
+   * @param task
+   *          the current task or null if none
+   */
+  static void setTask(Task task) {
+    final Thread t = currentThread();
+    if (t instanceof Worker) {
+      ((Worker) t).task = task;
+    } else {
+      tasks.set(task);
+    }
+  }
 }
@@ -19,9 +19,23 @@ import java.util.concurrent.ForkJoinWorkerThread;
  * pool.
  */
 final class WorkerFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+  /**
+   * The global runtime instance owning the pool.
+   */
+  private final GlobalRuntimeImpl runtime;
+
+  /**
+   * Instantiates a factory for the pool of the given global runtime instance.
+   *
+   * @param runtime
+   *          the global runtime instance
+   */
+  WorkerFactory(GlobalRuntimeImpl runtime) {
+    this.runtime = runtime;
+  }
 
   @Override
   public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
-    return new Worker(pool);
+    return new Worker(pool, runtime);
   }
 }
@@ -0,0 +1,493 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package apgas.util;
+
+import static apgas.Constructs.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.KryoSerializable;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.io.UnsafeInput;
+import com.esotericsoftware.kryo.io.UnsafeOutput;
+import com.esotericsoftware.kryo.util.UnsafeUtil;
+
+import apgas.Place;
+import apgas.SerializableJob;
+
+/**
+ * The {@link ArrayCopy} class implements bulk copies of primitive arrays
+ * between places.
+ * <p>
+ * The destination array is designated by a {@link GlobalRef} to the array or
+ * by a {@link PlaceLocalIntArray}. The elements are written straight from the
+ * source array into the serialization buffer and read straight from the
+ * deserialization buffer into the destination array with raw memory copies
+ * in native byte order if the transport uses unsafe Kryo streams. Other
+ * streams receive the elements in chunks converted with bulk copies through a
+ * direct buffer. The source array is neither captured in a closure nor walked
+ * as an object graph.
+ * <p>
+ * Copies are asynchronous. Their completion is tracked by the enclosing finish
+ * like for {@link apgas.Constructs#asyncAt(Place, SerializableJob)}. The
+ * source range must not be modified until then.
+ */
+public final class ArrayCopy implements SerializableJob, KryoSerializable {
+  private static final long serialVersionUID = -2802283434938271716L;
+
+  /**
+   * The size of the chunks in bytes.
+   */
+  private static final int CHUNK = 1 << 16;
+
+  /**
+   * The per-thread direct buffer used to convert chunks of elements to bytes
+   * with bulk memory copies.
+   */
+  private static final ThreadLocal<ByteBuffer> direct = ThreadLocal
+      .withInitial(() -> ByteBuffer.allocateDirect(CHUNK));
+
+  /**
+   * The per-thread chunk of bytes exchanged with the serialization stream.
+   */
+  private static final ThreadLocal<byte[]> chunk = ThreadLocal
+      .withInitial(() -> new byte[CHUNK]);
+
+  /**
+   * The supported element types indexed by kind.
+   */
+  private static final Class<?>[] TYPES = { byte.class, char.class,
+      short.class, int.class, long.class, float.class, double.class };
+
+  /**
+   * The base-2 logarithms of the element sizes indexed by kind.
+   */
+  private static final int[] SHIFTS = { 0, 1, 1, 2, 3, 2, 3 };
+
+  /**
+   * The offsets of the first element of the arrays indexed by kind.
+   */
+  private static final long[] BASES = { UnsafeUtil.byteArrayBaseOffset,
+      UnsafeUtil.charArrayBaseOffset, UnsafeUtil.shortArrayBaseOffset,
+      UnsafeUtil.intArrayBaseOffset, UnsafeUtil.longArrayBaseOffset,
+      UnsafeUtil.floatArrayBaseOffset, UnsafeUtil.doubleArrayBaseOffset };
+
+  /**
+   * True if the native byte order is big-endian.
+   */
+  private static final boolean NATIVE_BIG_ENDIAN = ByteOrder
+      .nativeOrder() == ByteOrder.BIG_ENDIAN;
+
+  /**
+   * The source array, null once deserialized.
+   */
+  private transient Object src;
+
+  /**
+   * The index of the first element to copy from the source array.
+   */
+  private transient int srcOffset;
+
+  /**
+   * The destination of the copy.
+   */
+  private transient GlobalID id;
+
+  /**
+   * The index of the first element to copy into the destination array.
+   */
+  private transient int dstOffset;
+
+  /**
+   * The number of elements to copy.
+   */
+  private transient int length;
+
+  /**
+   * The element type of the source array.
+   */
+  private transient int kind;
+
+  /**
+   * True if the elements are streamed in big-endian order.
+   */
+  private transient boolean bigEndian;
+
+  /**
+   * The reason the destination array could not be written to during
+   * deserialization if any.
+   */
+  private transient RuntimeException failure;
+
+  private ArrayCopy(Object src, int srcOffset, GlobalID id, int dstOffset,
+      int length) {
+    this.src = src;
+    this.srcOffset = srcOffset;
+    this.id = id;
+    this.dstOffset = dstOffset;
+    this.length = length;
+    kind = kind(src);
+    if (srcOffset < 0 || length < 0
+        || srcOffset > Array.getLength(src) - length) {
+      throw new ArrayIndexOutOfBoundsException(
+          "Invalid source range: " + srcOffset + "+" + length);
+    }
+  }
+
+  /**
+   * Copies a range of a primitive array into the array referenced by
+   * {@code dst} at the given place and returns immediately.
+   *
+   * @param src
+   *          the source array of any primitive type except boolean
+   * @param srcOffset
+   *          the index of the first element to copy from the source array
+   * @param dst
+   *          a global reference to the destination array
+   * @param place
+   *          the place of the destination array
+   * @param dstOffset
+   *          the index of the first element to copy into the destination
+   *          array
+   * @param length
+   *          the number of elements to copy
+   * @throws IllegalArgumentException
+   *           if {@code src} is not a supported primitive array
+   * @throws ArrayIndexOutOfBoundsException
+   *           if the source range is out of bounds
+   */
+  public static void asyncCopy(Object src, int srcOffset, GlobalRef<?> dst,
+      Place place, int dstOffset, int length) {
+    asyncAt(place, new ArrayCopy(src, srcOffset, dst.id, dstOffset, length));
+  }
+
+  /**
+   * Copies a range of an int array into the local array of {@code dst} at the
+   * given place and returns immediately.
+   *
+   * @param src
+   *          the source array
+   * @param srcOffset
+   *          the index of the first element to copy from the source array
+   * @param dst
+   *          the destination place local array
+   * @param place
+   *          the place of the destination array
+   * @param dstOffset
+   *          the index of the first element to copy into the destination
+   *          array
+   * @param length
+   *          the number of elements to copy
+   * @throws ArrayIndexOutOfBoundsException
+   *           if the source range is out of bounds
+   */
+  public static void asyncCopy(int[] src, int srcOffset,
+      PlaceLocalIntArray dst, Place place, int dstOffset, int length) {
+    asyncAt(place, new ArrayCopy(src, srcOffset, dst.id, dstOffset, length));
+  }
+
+  /**
+   * Performs the copy if not already done during deserialization, or reports
+   * the failure of the copy during deserialization.
+   *
+   * @throws RuntimeException
+   *           if the destination array is not valid
+   */
+  @Override
+  public void run() {
+    if (failure != null) {
+      throw failure;
+    }
+    if (src != null) {
+      System.arraycopy(src, srcOffset, resolve(), dstOffset, length);
+    }
+  }
+
+  /**
+   * Returns the kind of a primitive array.
+   *
+   * @param array
+   *          an array
+   * @return the index of the element type in {@link #TYPES}
+   * @throws IllegalArgumentException
+   *           if the array type is not supported
+   */
+  private static int kind(Object array) {
+    final Class<?> type = array.getClass().getComponentType();
+    for (int i = 0; i < TYPES.length; i++) {
+      if (TYPES[i] == type) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException(
+        "Unsupported array type: " + array.getClass().getName());
+  }
+
+  /**
+   * Returns the destination array at the current place.
+   *
+   * @return the destination array
+   * @throws BadPlaceException
+   *           if the destination is not defined at the current place
+   * @throws ArrayStoreException
+   *           if the destination is not an array of the source type
+   * @throws ArrayIndexOutOfBoundsException
+   *           if the destination range is out of bounds
+   */
+  private Object resolve() {
+    Object dst = id.getHere();
+    if (dst instanceof PlaceLocalIntArray) {
+      dst = ((PlaceLocalIntArray) dst).array;
+    }
+    if (dst == null) {
+      throw new BadPlaceException();
+    }
+    if (dst.getClass().getComponentType() != TYPES[kind]) {
+      throw new ArrayStoreException(
+          "Mismatched array types: " + TYPES[kind].getName() + "[] and "
+              + dst.getClass().getName());
+    }
+    if (dstOffset < 0
+        || dstOffset > Array.getLength(dst) - length) {
+      throw new ArrayIndexOutOfBoundsException(
+          "Invalid destination range: " + dstOffset + "+" + length);
+    }
+    return dst;
+  }
+
+  /**
+   * Streams the source elements in native byte order.
+   *
+   * @param out
+   *          the stream to write to
+   * @throws IOException
+   *           if an I/O error occurs
+   */
+  private void writeElements(OutputStream out) throws IOException {
+    final int shift = SHIFTS[kind];
+    final ByteBuffer buffer = direct.get().order(ByteOrder.nativeOrder());
+    final byte[] bytes = chunk.get();
+    for (int done = 0; done < length;) {
+      final int n = Math.min(length - done, CHUNK >> shift);
+      buffer.clear();
+      put(buffer, src, srcOffset + done, n);
+      buffer.get(bytes, 0, n << shift);
+      out.write(bytes, 0, n << shift);
+      done += n;
+    }
+  }
+
+  /**
+   * Streams the elements into the destination array. Skips the elements if
+   * the destination array is not valid.
+   *
+   * @param in
+   *          the stream to read from
+   * @throws IOException
+   *           if an I/O error occurs
+   */
+  private void readElements(InputStream in) throws IOException {
+    final int shift = SHIFTS[kind];
+    final Object dst = resolveOrFail();
+    final ByteBuffer buffer = direct.get()
+        .order(bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+    final byte[] bytes = chunk.get();
+    for (int done = 0; done < length;) {
+      final int n = Math.min(length - done, CHUNK >> shift);
+      final int size = n << shift;
+      for (int k = 0; k < size;) {
+        final int r = in.read(bytes, k, size - k);
+        if (r < 0) {
+          throw new IOException("Truncated array copy");
+        }
+        k += r;
+      }
+      if (dst != null) {
+        buffer.clear();
+        buffer.put(bytes, 0, size).flip();
+        get(buffer, dst, dstOffset + done, n);
+      }
+      done += n;
+    }
+  }
+
+  /**
+   * Returns the destination array at the current place or null after
+   * recording the reason the copy failed.
+   */
+  private Object resolveOrFail() {
+    try {
+      return resolve();
+    } catch (final RuntimeException e) {
+      failure = e;
+      return null;
+    }
+  }
+
+  /**
+   * Writes the source elements into a Kryo output, as a raw memory copy into
+   * the buffer of the output if the output is unsafe.
+   *
+   * @param output
+   *          the output
+   * @throws IOException
+   *           if an I/O error occurs
+   */
+  private void writeElements(Output output) throws IOException {
+    if (output instanceof UnsafeOutput) {
+      ((UnsafeOutput) output).writeBytes(src,
+          BASES[kind] + ((long) srcOffset << SHIFTS[kind]),
+          (long) length << SHIFTS[kind]);
+    } else {
+      writeElements((OutputStream) output);
+    }
+  }
+
+  /**
+   * Reads the elements from a Kryo input into the destination array, as a raw
+   * memory copy from the buffer of the input if the input is unsafe and the
+   * byte orders match. Skips the elements if the destination array is not
+   * valid.
+   *
+   * @param input
+   *          the input
+   * @throws IOException
+   *           if an I/O error occurs
+   */
+  private void readElements(Input input) throws IOException {
+    if (!(input instanceof UnsafeInput) || bigEndian != NATIVE_BIG_ENDIAN) {
+      readElements((InputStream) input);
+      return;
+    }
+    final Object dst = resolveOrFail();
+    if (dst == null) {
+      input.skip((long) length << SHIFTS[kind]);
+    } else {
+      ((UnsafeInput) input).readBytes(dst,
+          BASES[kind] + ((long) dstOffset << SHIFTS[kind]),
+          (long) length << SHIFTS[kind]);
+    }
+  }
+
+  /**
+   * Bulk copies array elements into a buffer.
+   */
+  private void put(ByteBuffer buffer, Object array, int offset, int n) {
+    switch (kind) {
+    case 0:
+      buffer.duplicate().put((byte[]) array, offset, n);
+      break;
+    case 1:
+      buffer.asCharBuffer().put((char[]) array, offset, n);
+      break;
+    case 2:
+      buffer.asShortBuffer().put((short[]) array, offset, n);
+      break;
+    case 3:
+      buffer.asIntBuffer().put((int[]) array, offset, n);
+      break;
+    case 4:
+      buffer.asLongBuffer().put((long[]) array, offset, n);
+      break;
+    case 5:
+      buffer.asFloatBuffer().put((float[]) array, offset, n);
+      break;
+    default:
+      buffer.asDoubleBuffer().put((double[]) array, offset, n);
+    }
+  }
+
+  /**
+   * Bulk copies buffer elements into an array.
+   */
+  private void get(ByteBuffer buffer, Object array, int offset, int n) {
+    switch (kind) {
+    case 0:
+      buffer.get((byte[]) array, offset, n);
+      break;
+    case 1:
+      buffer.asCharBuffer().get((char[]) array, offset, n);
+      break;
+    case 2:
+      buffer.asShortBuffer().get((short[]) array, offset, n);
+      break;
+    case 3:
+      buffer.asIntBuffer().get((int[]) array, offset, n);
+      break;
+    case 4:
+      buffer.asLongBuffer().get((long[]) array, offset, n);
+      break;
+    case 5:
+      buffer.asFloatBuffer().get((float[]) array, offset, n);
+      break;
+    default:
+      buffer.asDoubleBuffer().get((double[]) array, offset, n);
+    }
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    out.writeObject(id);
+    out.writeByte(kind);
+    out.writeBoolean(NATIVE_BIG_ENDIAN);
+    out.writeInt(dstOffset);
+    out.writeInt(length);
+    writeElements(out);
+  }
+
+  private void readObject(ObjectInputStream in)
+      throws IOException, ClassNotFoundException {
+    id = (GlobalID) in.readObject();
+    kind = in.readByte();
+    bigEndian = in.readBoolean();
+    dstOffset = in.readInt();
+    length = in.readInt();
+    readElements(in);
+  }
+
+  @Override
+  public void write(Kryo kryo, Output output) {
+    kryo.writeObject(output, id);
+    output.writeByte(kind);
+    output.writeBoolean(NATIVE_BIG_ENDIAN);
+    output.writeInt(dstOffset);
+    output.writeInt(length);
+    try {
+      writeElements(output);
+    } catch (final IOException e) {
+      throw new KryoException(e);
+    }
+  }
+
+  @Override
+  public void read(Kryo kryo, Input input) {
+    id = kryo.readObject(input, GlobalID.class);
+    kind = input.readByte();
+    bigEndian = input.readBoolean();
+    dstOffset = input.readInt();
+    length = input.readInt();
+    try {
+      readElements(input);
+    } catch (final IOException e) {
+      throw new KryoException(e);
+    }
+  }
+}
@@ -21,6 +21,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import apgas.DeadPlaceException;
 import apgas.Place;
+import apgas.impl.GlobalRuntimeImpl;
 
 /**
  * The {@link GlobalID} class provides globally unique IDs and mechanisms to
@@ -38,9 +39,27 @@ public class GlobalID implements Serializable {
 
   /**
    * Internal map.
+   * <p>
+   * This is the map of the first place created in this JVM. Additional places
+   * running in the same JVM have maps of their own.
+   *
+   * @deprecated use {@link #map()}, which returns the map of the current place
    */
+  @Deprecated
   protected static final Map<GlobalID, Object> map = new ConcurrentHashMap<>();
 
+  /**
+   * Returns the internal map of the current place.
+   *
+   * @return the map
+   */
+  @SuppressWarnings("deprecation")
+  protected static Map<GlobalID, Object> map() {
+    final Map<GlobalID, Object> m = GlobalRuntimeImpl.getRuntime()
+        .getGlobalIDMap();
+    return m == null ? map : m;
+  }
+
   /**
    * The {@link Place} where this {@link GlobalID} was instantiated.
    */
@@ -71,6 +90,20 @@ public class GlobalID implements Serializable {
     lid = count.getAndIncrement();
   }
 
+  /**
+   * Reconstructs the {@link GlobalID} with the given components, e.g., when
+   * decoding a compact wire format.
+   *
+   * @param home
+   *          the place where the {@link GlobalID} was instantiated
+   * @param lid
+   *          the local ID component
+   */
+  public GlobalID(Place home, int lid) {
+    this.home = home;
+    this.lid = lid;
+  }
+
   /**
    * Associates the given value with this {@link GlobalID} instance.
    *
@@ -79,7 +112,7 @@ public class GlobalID implements Serializable {
    * @return the previous value
    */
   public Object putHere(Object value) {
-    final Object result = map.put(this, value == null ? NULL : value);
+    final Object result = map().put(this, value == null ? NULL : value);
     return result == NULL ? null : result;
   }
 
@@ -92,7 +125,8 @@ public class GlobalID implements Serializable {
    * @return the previous value
    */
   public Object putHereIfAbsent(Object value) {
-    final Object result = map.putIfAbsent(this, value == null ? NULL : value);
+    final Object result = map().putIfAbsent(this,
+        value == null ? NULL : value);
     return result == NULL ? null : result;
   }
 
@@ -102,7 +136,7 @@ public class GlobalID implements Serializable {
    * @return the current value
    */
   public Object getHere() {
-    final Object result = map.get(this);
+    final Object result = map().get(this);
     return result == NULL ? null : result;
   }
 
@@ -115,7 +149,7 @@ public class GlobalID implements Serializable {
    * @return the current or default value
    */
   public Object getOrDefaultHere(Object defaultValue) {
-    final Object result = map.getOrDefault(this, defaultValue);
+    final Object result = map().getOrDefault(this, defaultValue);
     return result == NULL ? null : result;
   }
 
@@ -125,7 +159,7 @@ public class GlobalID implements Serializable {
    * @return the removed value
    */
   public Object removeHere() {
-    final Object result = map.remove(this);
+    final Object result = map().remove(this);
     return result == NULL ? null : result;
   }
 
@@ -140,18 +174,8 @@ public class GlobalID implements Serializable {
    */
   public void remove(Collection<? extends Place> places) {
     final GlobalID that = this;
-    finish(() -> {
-      for (final Place p : places) {
-        try {
-          asyncAt(p, () -> {
-            that.removeHere();
-          });
-        } catch (final DeadPlaceException e) {
-          async(() -> {
-            throw e;
-          });
-        }
-      }
+    broadcast(places, () -> {
+      that.removeHere();
     });
   }
 
@@ -16,7 +16,6 @@ import static apgas.Constructs.*;
 import java.io.Serializable;
 import java.util.Collection;
 
-import apgas.DeadPlaceException;
 import apgas.Place;
 import apgas.SerializableCallable;
 
@@ -82,18 +81,8 @@ public class GlobalRef<T> implements Serializable {
     final GlobalID id = new GlobalID();
     this.id = id;
     this.places = places;
-    finish(() -> {
-      for (final Place p : places) {
-        try {
-          asyncAt(p, () -> {
-            id.putHere(initializer.call());
-          });
-        } catch (final DeadPlaceException e) {
-          async(() -> {
-            throw e;
-          });
-        }
-      }
+    broadcast(places, () -> {
+      id.putHere(initializer.call());
     });
   }
 
@@ -11,13 +11,25 @@
 
 package apgas.util;
 
+import java.io.Serializable;
 import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import apgas.DeadPlaceException;
 import apgas.Place;
+import apgas.impl.GlobalRuntimeImpl;
 
 /**
  * The {@link PlaceLocalIntArray} class implements a map from places to
  * {@code int} arrays.
+ * <p>
+ * The arrays of other places can be accessed with one-sided remote
+ * operations. These operations are served by the transport at the remote
+ * place without spawning tasks and return {@link RemoteFuture} instances.
+ * Remote operations on an array are atomic with respect to each other but not
+ * with respect to local accesses.
  */
 public class PlaceLocalIntArray extends PlaceLocalObject {
   /**
@@ -25,6 +37,16 @@ public class PlaceLocalIntArray extends PlaceLocalObject {
    */
   protected final int[] array;
 
+  /**
+   * The pending remote operations issued from this place indexed by ticket.
+   */
+  private final Map<Integer, RemoteFuture<?>> pending = new ConcurrentHashMap<>();
+
+  /**
+   * The last ticket issued from this place.
+   */
+  private final AtomicInteger tickets = new AtomicInteger();
+
   /**
    * Initializes the local array.
    *
@@ -58,6 +80,236 @@ public class PlaceLocalIntArray extends PlaceLocalObject {
     array[index] = t;
   }
 
+  /**
+   * Returns the array element at the specified index at the given place.
+   *
+   * @param place
+   *          the place of the array
+   * @param index
+   *          an index into the array
+   * @return a future of the array element
+   */
+  public RemoteFuture<Integer> remoteGet(Place place, int index) {
+    return request(place, a -> a[index]);
+  }
+
+  /**
+   * Returns the array elements at the specified indices at the given place.
+   *
+   * @param place
+   *          the place of the array
+   * @param indices
+   *          indices into the array
+   * @return a future of the array elements
+   */
+  public RemoteFuture<int[]> remoteGet(Place place, int[] indices) {
+    return request(place, a -> {
+      final int[] result = new int[indices.length];
+      for (int i = 0; i < indices.length; i++) {
+        result[i] = a[indices[i]];
+      }
+      return result;
+    });
+  }
+
+  /**
+   * Sets the array element at the specified index at the given place.
+   *
+   * @param place
+   *          the place of the array
+   * @param index
+   *          an index into the array
+   * @param t
+   *          the desired value
+   * @return a future completed once the element is set
+   */
+  public RemoteFuture<Void> remotePut(Place place, int index, int t) {
+    return request(place, a -> {
+      a[index] = t;
+      return null;
+    });
+  }
+
+  /**
+   * Sets the array elements at the specified indices at the given place.
+   *
+   * @param place
+   *          the place of the array
+   * @param indices
+   *          indices into the array
+   * @param values
+   *          the desired values
+   * @return a future completed once the elements are set
+   */
+  public RemoteFuture<Void> remotePut(Place place, int[] indices,
+      int[] values) {
+    return request(place, a -> {
+      for (int i = 0; i < indices.length; i++) {
+        a[indices[i]] = values[i];
+      }
+      return null;
+    });
+  }
+
+  /**
+   * Adds a value to the array element at the specified index at the given
+   * place.
+   *
+   * @param place
+   *          the place of the array
+   * @param index
+   *          an index into the array
+   * @param delta
+   *          the value to add
+   * @return a future of the previous value of the element
+   */
+  public RemoteFuture<Integer> remoteAdd(Place place, int index, int delta) {
+    return request(place, a -> {
+      final int previous = a[index];
+      a[index] = previous + delta;
+      return previous;
+    });
+  }
+
+  /**
+   * Adds values to the array elements at the specified indices at the given
+   * place.
+   *
+   * @param place
+   *          the place of the array
+   * @param indices
+   *          indices into the array
+   * @param deltas
+   *          the values to add
+   * @return a future of the previous values of the elements
+   */
+  public RemoteFuture<int[]> remoteAdd(Place place, int[] indices,
+      int[] deltas) {
+    return request(place, a -> {
+      final int[] result = new int[indices.length];
+      for (int i = 0; i < indices.length; i++) {
+        result[i] = a[indices[i]];
+        a[indices[i]] = result[i] + deltas[i];
+      }
+      return result;
+    });
+  }
+
+  /**
+   * An operation on the array of a place.
+   *
+   * @param <T>
+   *          the type of the result
+   */
+  @FunctionalInterface
+  private interface Operation<T> extends Serializable {
+    T apply(int[] array);
+  }
+
+  /**
+   * Sends an operation to the given place.
+   *
+   * @param <T>
+   *          the type of the result
+   * @param place
+   *          the place of the array
+   * @param op
+   *          the operation
+   * @return the future of the result
+   */
+  private <T> RemoteFuture<T> request(Place place, Operation<T> op) {
+    final Integer ticket = tickets.incrementAndGet();
+    final RemoteFuture<T> future = new RemoteFuture<>(place,
+        () -> pending.remove(ticket));
+    final Place home = GlobalRuntimeImpl.getRuntime().here();
+    pending.put(ticket, future);
+    try {
+      GlobalRuntimeImpl.getRuntime().immediateAsyncAt(place,
+          () -> serve(home, ticket, op));
+    } catch (final RuntimeException e) {
+      pending.remove(ticket);
+      throw e;
+    }
+    return future;
+  }
+
+  /**
+   * Applies an operation to the local array and replies to the requester.
+   * <p>
+   * Always replies unless the requester is dead: errors are wrapped in a
+   * {@link RuntimeException} and a reply that cannot be sent is replaced with
+   * a failure describing why.
+   *
+   * @param home
+   *          the requesting place
+   * @param ticket
+   *          the ticket of the operation
+   * @param op
+   *          the operation
+   */
+  private void serve(Place home, Integer ticket, Operation<?> op) {
+    Object result = null;
+    RuntimeException failure = null;
+    try {
+      synchronized (array) {
+        result = op.apply(array);
+      }
+    } catch (final RuntimeException e) {
+      failure = e;
+    } catch (final Throwable e) {
+      failure = new RuntimeException(e);
+    }
+    try {
+      reply(home, ticket, result, failure);
+    } catch (final DeadPlaceException e) {
+      // the requester is gone
+    } catch (final Throwable e) {
+      try {
+        reply(home, ticket, null,
+            new RuntimeException("Failed to reply from place "
+                + GlobalRuntimeImpl.getRuntime().here() + " due to: " + e));
+      } catch (final DeadPlaceException x) {
+        // the requester is gone
+      }
+    }
+  }
+
+  /**
+   * Sends the outcome of an operation to the requester.
+   *
+   * @param home
+   *          the requesting place
+   * @param ticket
+   *          the ticket of the operation
+   * @param result
+   *          the result
+   * @param failure
+   *          the failure or null
+   */
+  private void reply(Place home, Integer ticket, Object result,
+      RuntimeException failure) {
+    GlobalRuntimeImpl.getRuntime().immediateAsyncAt(home,
+        () -> complete(ticket, result, failure));
+  }
+
+  /**
+   * Completes a pending operation.
+   *
+   * @param ticket
+   *          the ticket of the operation
+   * @param result
+   *          the result
+   * @param failure
+   *          the failure or null
+   */
+  private void complete(Integer ticket, Object result,
+      RuntimeException failure) {
+    final RemoteFuture<?> future = pending.remove(ticket);
+    if (future != null) {
+      future.complete(result, failure);
+    }
+  }
+
   /**
    * Constructs a {@link PlaceLocalArray} instance.
    *
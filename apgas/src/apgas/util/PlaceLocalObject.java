@@ -17,7 +17,6 @@ import java.io.ObjectStreamException;
 import java.io.Serializable;
 import java.util.Collection;
 
-import apgas.Constructs;
 import apgas.DeadPlaceException;
 import apgas.Place;
 import apgas.SerializableCallable;
@@ -62,14 +61,10 @@ public class PlaceLocalObject implements Serializable {
       Collection<? extends Place> places, SerializableCallable<T> initializer) {
     final GlobalID id = new GlobalID();
     try {
-      finish(() -> {
-        for (final Place p : places) {
-          Constructs.asyncAt(p, () -> {
-            final T t = initializer.call();
-            t.id = id;
-            id.putHere(t);
-          });
-        }
+      broadcast(places, () -> {
+        final T t = initializer.call();
+        t.id = id;
+        id.putHere(t);
       });
     } catch (final DeadPlaceException e) {
       id.remove(places);
@@ -0,0 +1,179 @@
+/*
+ *  This file is part of the X10 project (http://x10-lang.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  (C) Copyright IBM Corporation 2006-2016.
+ */
+
+package apgas.util;
+
+import static apgas.Constructs.*;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.LockSupport;
+
+import apgas.DeadPlaceException;
+import apgas.Place;
+
+/**
+ * A {@link RemoteFuture} instance holds the pending result of a one-sided
+ * remote operation.
+ *
+ * @param <T>
+ *          the type of the result
+ */
+public final class RemoteFuture<T> implements ForkJoinPool.ManagedBlocker {
+  /**
+   * The place of the remote operation.
+   */
+  private final Place place;
+
+  /**
+   * Invoked if the future fails because the place of the operation died, so
+   * that the owner of the future may discard it.
+   */
+  private final Runnable abandon;
+
+  /**
+   * True once the result or failure is available.
+   */
+  private boolean done;
+
+  /**
+   * The result.
+   */
+  private T value;
+
+  /**
+   * The failure if any.
+   */
+  private RuntimeException failure;
+
+  /**
+   * The thread blocked on this future if any.
+   */
+  private Thread waiter;
+
+  /**
+   * Constructs a pending future.
+   *
+   * @param place
+   *          the place of the remote operation
+   * @param abandon
+   *          invoked if the place of the operation dies before replying
+   */
+  RemoteFuture(Place place, Runnable abandon) {
+    this.place = place;
+    this.abandon = abandon;
+  }
+
+  /**
+   * Returns true if the operation has completed.
+   *
+   * @return true if the result is available
+   */
+  public synchronized boolean isDone() {
+    return done;
+  }
+
+  /**
+   * Waits for the operation to complete and returns its result.
+   * <p>
+   * Interrupts do not end the wait. The interrupt status of the thread is
+   * preserved.
+   *
+   * @return the result of the operation
+   * @throws DeadPlaceException
+   *           if the place of the operation died before replying
+   * @throws RuntimeException
+   *           if the operation failed
+   */
+  public T get() {
+    boolean interrupted = false;
+    while (!isReleasable()) {
+      try {
+        ForkJoinPool.managedBlock(this);
+      } catch (final InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (this) {
+      if (failure != null) {
+        throw failure;
+      }
+      return value;
+    }
+  }
+
+  /**
+   * Completes the operation.
+   *
+   * @param value
+   *          the result
+   * @param failure
+   *          the failure or null
+   */
+  @SuppressWarnings("unchecked")
+  synchronized void complete(Object value, RuntimeException failure) {
+    if (!done) {
+      this.value = (T) value;
+      this.failure = failure;
+      done = true;
+      if (waiter != null) {
+        LockSupport.unpark(waiter);
+        waiter = null;
+      }
+    }
+  }
+
+  @Override
+  public synchronized boolean isReleasable() {
+    return done;
+  }
+
+  /**
+   * Waits for the reply. Polls the liveness of the remote place periodically.
+   */
+  @Override
+  public boolean block() {
+    // park ignores a pending interrupt, clear it and restore it once released
+    boolean interrupted = false;
+    try {
+      while (true) {
+        synchronized (this) {
+          if (done) {
+            return true;
+          }
+          waiter = Thread.currentThread();
+        }
+        if (Thread.interrupted()) {
+          interrupted = true;
+        }
+        // unlike waiting on the monitor, parking unmounts a virtual thread
+        LockSupport.parkNanos(this, 100000000L);
+        synchronized (this) {
+          if (done) {
+            return true;
+          }
+          if (!places().contains(place)) {
+            complete(null, new DeadPlaceException(place));
+            break;
+          }
+        }
+      }
+      abandon.run();
+      return true;
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}